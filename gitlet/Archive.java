@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes files into a tar or zip archive as they are added, so the
+ *  archive goes straight to its output stream and only the file being
+ *  added is held in memory. Tar archives use the POSIX ustar layout: a
+ *  512-byte header per file, its contents padded to a 512-byte block,
+ *  and two zero blocks at the end, rounded up to a 10240-byte record.
+ *  @author Yusuf Quddus
+ */
+class Archive implements AutoCloseable {
+
+    /**
+     * An archive in FORMAT written to OUT, giving every file the
+     * modification time MTIME.
+     *
+     * @param format "tar" or "zip".
+     * @param out where the archive is written; closed with the archive.
+     * @param mtime modification time in seconds since the epoch.
+     */
+    Archive(String format, OutputStream out, long mtime) {
+        if (format.equals("zip")) {
+            _zip = new ZipOutputStream(out);
+            _out = _zip;
+        } else if (format.equals("tar")) {
+            _zip = null;
+            _out = out;
+        } else {
+            throw new IllegalArgumentException("unknown archive format "
+                                               + format);
+        }
+        _mtime = mtime;
+    }
+
+    /**
+     * Write the file NAME with CONTENTS to the archive.
+     *
+     * @param name path of the file inside the archive.
+     * @param contents its contents.
+     * @throws IOException if the output cannot be written.
+     */
+    void add(String name, byte[] contents) throws IOException {
+        if (_zip != null) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setLastModifiedTime(FileTime.fromMillis(_mtime * 1000));
+            _zip.putNextEntry(entry);
+            _zip.write(contents);
+            _zip.closeEntry();
+            return;
+        }
+        _out.write(tarHeader(name, contents.length));
+        _out.write(contents);
+        _written += BLOCK + contents.length;
+        writeZeros(-contents.length & (BLOCK - 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_zip == null) {
+            writeZeros(2 * BLOCK);
+            writeZeros((int) ((RECORD - _written % RECORD) % RECORD));
+        }
+        _out.close();
+    }
+
+    /** Return the ustar header of file NAME of SIZE bytes. */
+    private byte[] tarHeader(String name, long size) {
+        byte[] header = new byte[BLOCK];
+        byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        int split = 0;
+        if (path.length > NAME_LENGTH) {
+            for (int i = path.length - NAME_LENGTH - 1; i < path.length;
+                 i += 1) {
+                if (i > 0 && i <= PREFIX_LENGTH && path[i] == '/') {
+                    split = i;
+                    break;
+                }
+            }
+            if (split == 0) {
+                throw Utils.error("Name too long for a tar archive: %s",
+                                  name);
+            }
+            System.arraycopy(path, 0, header, PREFIX_OFFSET, split);
+            split += 1;
+        }
+        System.arraycopy(path, split, header, 0, path.length - split);
+        octal(header, MODE_OFFSET, 8, FILE_MODE);
+        octal(header, UID_OFFSET, 8, 0);
+        octal(header, GID_OFFSET, 8, 0);
+        octal(header, SIZE_OFFSET, 12, size);
+        octal(header, MTIME_OFFSET, 12, _mtime);
+        header[TYPE_OFFSET] = '0';
+        System.arraycopy(MAGIC, 0, header, MAGIC_OFFSET, MAGIC.length);
+        Arrays.fill(header, CHECKSUM_OFFSET, CHECKSUM_OFFSET + 8, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, CHECKSUM_OFFSET, 7, checksum);
+        return header;
+    }
+
+    /** Write VALUE into HEADER[OFFSET .. OFFSET + WIDTH - 1] as zero-padded
+     *  octal digits followed by a NUL. */
+    private static void octal(byte[] header, int offset, int width,
+                              long value) {
+        String digits = Long.toOctalString(value);
+        int pad = width - 1 - digits.length();
+        if (pad < 0) {
+            throw Utils.error("Value too large for a tar header: %d", value);
+        }
+        for (int i = 0; i < width - 1; i += 1) {
+            header[offset + i] = (byte) (i < pad ? '0'
+                                         : digits.charAt(i - pad));
+        }
+        header[offset + width - 1] = 0;
+    }
+
+    /** Write COUNT zero bytes. */
+    private void writeZeros(int count) throws IOException {
+        _out.write(new byte[count]);
+        _written += count;
+    }
+
+    /** Bytes in a tar block, and in a tar record. */
+    private static final int BLOCK = 512, RECORD = 20 * BLOCK;
+
+    /** Longest name, and longest prefix, in a ustar header. */
+    private static final int NAME_LENGTH = 100, PREFIX_LENGTH = 155;
+
+    /** Offsets of the fields of a ustar header. */
+    private static final int MODE_OFFSET = 100, UID_OFFSET = 108,
+        GID_OFFSET = 116, SIZE_OFFSET = 124, MTIME_OFFSET = 136,
+        CHECKSUM_OFFSET = 148, TYPE_OFFSET = 156, MAGIC_OFFSET = 257,
+        PREFIX_OFFSET = 345;
+
+    /** Permissions of every archived file. */
+    private static final int FILE_MODE = 0644;
+
+    /** Magic and version of a ustar header. */
+    private static final byte[] MAGIC =
+        "ustar\u000000".getBytes(StandardCharsets.US_ASCII);
+
+    /** The zip stream, or null when writing a tar archive. */
+    private final ZipOutputStream _zip;
+
+    /** Where the archive is written. */
+    private final OutputStream _out;
+
+    /** Modification time of every file, in seconds since the epoch. */
+    private final long _mtime;
+
+    /** Bytes of tar output written so far. */
+    private long _written;
+}
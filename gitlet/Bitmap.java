@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** A compressed set of non-negative ints in the style of a Roaring
+ *  bitmap. Values are split into chunks of 65536 by their high 16 bits.
+ *  A chunk holding few values stores them as a sorted array of their low
+ *  16 bits; a denser chunk stores a 65536-bit bitset. Set operations
+ *  work chunk by chunk, so sparse and dense regions both stay small.
+ *  @author Yusuf Quddus
+ */
+class Bitmap {
+
+    /** An empty bitmap. */
+    Bitmap() {
+        _keys = new char[0];
+        _chunks = new Object[0];
+    }
+
+    /**
+     * Add VALUE to this set.
+     *
+     * @param value a non-negative int.
+     */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int i = Arrays.binarySearch(_keys, 0, _size, key);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, key, new char[] {low});
+            return;
+        }
+        if (_chunks[i] instanceof long[]) {
+            long[] bits = (long[]) _chunks[i];
+            bits[low >>> 6] |= 1L << low;
+            return;
+        }
+        char[] values = (char[]) _chunks[i];
+        int j = Arrays.binarySearch(values, low);
+        if (j >= 0) {
+            return;
+        }
+        j = -j - 1;
+        char[] grown = new char[values.length + 1];
+        System.arraycopy(values, 0, grown, 0, j);
+        grown[j] = low;
+        System.arraycopy(values, j, grown, j + 1, values.length - j);
+        _chunks[i] = grown.length > ARRAY_LIMIT ? toBits(grown) : grown;
+    }
+
+    /**
+     * @param value a non-negative int.
+     * @return true if VALUE is in this set
+     */
+    boolean contains(int value) {
+        int i = Arrays.binarySearch(_keys, 0, _size, (char) (value >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (_chunks[i] instanceof long[]) {
+            return (((long[]) _chunks[i])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) _chunks[i], low) >= 0;
+    }
+
+    /**
+     * @return the number of values in this set
+     */
+    int cardinality() {
+        int result = 0;
+        for (int i = 0; i < _size; i += 1) {
+            result += chunkCardinality(_chunks[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the values in this set in increasing order
+     */
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int k = 0;
+        for (int i = 0; i < _size; i += 1) {
+            int high = _keys[i] << 16;
+            if (_chunks[i] instanceof long[]) {
+                long[] bits = (long[]) _chunks[i];
+                for (int w = 0; w < bits.length; w += 1) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        result[k++] = high | (w << 6)
+                            | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (char low : (char[]) _chunks[i]) {
+                    result[k++] = high | low;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other another bitmap.
+     * @return a new bitmap holding the values in this set or in OTHER
+     */
+    Bitmap or(Bitmap other) {
+        return combine(other, OR);
+    }
+
+    /**
+     * @param other another bitmap.
+     * @return a new bitmap holding the values in both this set and OTHER
+     */
+    Bitmap and(Bitmap other) {
+        return combine(other, AND);
+    }
+
+    /**
+     * @param other another bitmap.
+     * @return a new bitmap holding the values in this set but not OTHER
+     */
+    Bitmap andNot(Bitmap other) {
+        return combine(other, AND_NOT);
+    }
+
+    /**
+     * Write this bitmap to OUT.
+     *
+     * @param out destination.
+     * @throws IOException
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(_size);
+        for (int i = 0; i < _size; i += 1) {
+            out.writeChar(_keys[i]);
+            if (_chunks[i] instanceof long[]) {
+                out.writeBoolean(true);
+                for (long word : (long[]) _chunks[i]) {
+                    out.writeLong(word);
+                }
+            } else {
+                char[] values = (char[]) _chunks[i];
+                out.writeBoolean(false);
+                out.writeShort(values.length - 1);
+                for (char low : values) {
+                    out.writeChar(low);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a bitmap written by write from IN.
+     *
+     * @param in source.
+     * @return the bitmap read
+     * @throws IOException
+     */
+    static Bitmap read(DataInput in) throws IOException {
+        Bitmap result = new Bitmap();
+        int size = in.readInt();
+        result._keys = new char[size];
+        result._chunks = new Object[size];
+        result._size = size;
+        for (int i = 0; i < size; i += 1) {
+            result._keys[i] = in.readChar();
+            if (in.readBoolean()) {
+                long[] bits = new long[BITSET_WORDS];
+                for (int w = 0; w < BITSET_WORDS; w += 1) {
+                    bits[w] = in.readLong();
+                }
+                result._chunks[i] = bits;
+            } else {
+                char[] values = new char[in.readUnsignedShort() + 1];
+                for (int j = 0; j < values.length; j += 1) {
+                    values[j] = in.readChar();
+                }
+                result._chunks[i] = values;
+            }
+        }
+        return result;
+    }
+
+    /** Return the result of applying operation OP chunk by chunk to this
+     *  set and OTHER. */
+    private Bitmap combine(Bitmap other, int op) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < _size || j < other._size) {
+            int cmp = i == _size ? 1 : j == other._size ? -1
+                : Character.compare(_keys[i], other._keys[j]);
+            Object chunk;
+            char key;
+            if (cmp < 0) {
+                key = _keys[i];
+                chunk = op == AND ? null : _chunks[i];
+                i += 1;
+            } else if (cmp > 0) {
+                key = other._keys[j];
+                chunk = op == OR ? other._chunks[j] : null;
+                j += 1;
+            } else {
+                key = _keys[i];
+                chunk = combineChunks(_chunks[i], other._chunks[j], op);
+                i += 1;
+                j += 1;
+            }
+            if (chunk != null && chunkCardinality(chunk) > 0) {
+                result.insertChunk(result._size, key, copy(chunk));
+            }
+        }
+        return result;
+    }
+
+    /** Return the result of applying OP to chunks A and B. */
+    private static Object combineChunks(Object a, Object b, int op) {
+        long[] x = a instanceof long[] ? (long[]) a : toBits((char[]) a);
+        long[] y = b instanceof long[] ? (long[]) b : toBits((char[]) b);
+        long[] bits = new long[BITSET_WORDS];
+        for (int w = 0; w < BITSET_WORDS; w += 1) {
+            switch (op) {
+            case OR:
+                bits[w] = x[w] | y[w];
+                break;
+            case AND:
+                bits[w] = x[w] & y[w];
+                break;
+            default:
+                bits[w] = x[w] & ~y[w];
+                break;
+            }
+        }
+        return shrink(bits);
+    }
+
+    /** Insert CHUNK with high bits KEY at index I. */
+    private void insertChunk(int i, char key, Object chunk) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, Math.max(4, 2 * _size));
+            _chunks = Arrays.copyOf(_chunks, Math.max(4, 2 * _size));
+        }
+        System.arraycopy(_keys, i, _keys, i + 1, _size - i);
+        System.arraycopy(_chunks, i, _chunks, i + 1, _size - i);
+        _keys[i] = key;
+        _chunks[i] = chunk;
+        _size += 1;
+    }
+
+    /** Return the number of values in CHUNK. */
+    private static int chunkCardinality(Object chunk) {
+        if (chunk instanceof long[]) {
+            int result = 0;
+            for (long word : (long[]) chunk) {
+                result += Long.bitCount(word);
+            }
+            return result;
+        }
+        return ((char[]) chunk).length;
+    }
+
+    /** Return a bitset chunk holding VALUES. */
+    private static long[] toBits(char[] values) {
+        long[] bits = new long[BITSET_WORDS];
+        for (char low : values) {
+            bits[low >>> 6] |= 1L << low;
+        }
+        return bits;
+    }
+
+    /** Return BITS as an array chunk if it is sparse enough. */
+    private static Object shrink(long[] bits) {
+        int card = chunkCardinality(bits);
+        if (card > ARRAY_LIMIT) {
+            return bits;
+        }
+        char[] values = new char[card];
+        int k = 0;
+        for (int w = 0; w < BITSET_WORDS; w += 1) {
+            long word = bits[w];
+            while (word != 0) {
+                values[k++] = (char) ((w << 6)
+                                      | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+
+    /** Return a copy of CHUNK. */
+    private static Object copy(Object chunk) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        return ((char[]) chunk).clone();
+    }
+
+    /** Operations for combine. */
+    private static final int OR = 0, AND = 1, AND_NOT = 2;
+
+    /** Most values an array chunk holds before becoming a bitset. */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /** Words in a bitset chunk. */
+    private static final int BITSET_WORDS = 1024;
+
+    /** High 16 bits of the values in each chunk, increasing. */
+    private char[] _keys;
+
+    /** Chunks: char[] of sorted low bits or long[] bitsets. */
+    private Object[] _chunks;
+
+    /** Number of chunks in use. */
+    private int _size;
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit that last changed each line of a file. Attribution starts
+ *  from the newest version and moves back one changing commit at a
+ *  time: the lines that version shares with its parent's version are
+ *  carried back, as ranges, and the rest belong to the commit. Only the
+ *  ranges still unattributed are carried, so the walk can stop as soon
+ *  as there are none.
+ *
+ *  A finished attribution can be saved to a file: MAGIC and VERSION, the
+ *  distinct commit ids, then the index of the commit of each line.
+ *  @author Yusuf Quddus
+ */
+class Blame {
+
+    /**
+     * An attribution of the lines of CONTENTS, none yet assigned.
+     *
+     * @param contents the newest version of the file.
+     */
+    Blame(String contents) {
+        _current = contents.getBytes(StandardCharsets.UTF_8);
+        _commits = new String[lines(contents).size()];
+        _ranges = _commits.length == 0 ? new int[0]
+            : new int[] { 0, 0, _commits.length };
+    }
+
+    /**
+     * @return true if every line has its commit
+     */
+    boolean done() {
+        return _ranges.length == 0;
+    }
+
+    /**
+     * Move back across COMMIT, which changed the file from PARENT to the
+     * version attributed so far: lines unattributed so far and not in
+     * PARENT belong to COMMIT, and the others are carried back to their
+     * lines in PARENT.
+     *
+     * @param commit id of the commit that made the current version.
+     * @param parent contents of the file in its parent, or null if the
+     *               parent does not have the file.
+     */
+    void step(String commit, String parent) {
+        byte[] parentText = parent == null ? new byte[0]
+            : parent.getBytes(StandardCharsets.UTF_8);
+        int[] common = new int[0];
+        if (parentText.length > 0) {
+            Diff diff = new Diff();
+            diff.setSequences(parentText, _current);
+            common = diff.commonSubsequence();
+        }
+        int[] carried = new int[_ranges.length + common.length];
+        int ncarried = 0;
+        int c = 0;
+        for (int r = 0; r < _ranges.length; r += 3) {
+            int start = _ranges[r], line = _ranges[r + 1],
+                end = start + _ranges[r + 2];
+            while (start < end) {
+                while (c < common.length
+                       && common[c + 1] + common[c + 2] <= start) {
+                    c += 3;
+                }
+                if (c == common.length || common[c + 1] >= end) {
+                    assign(line, end - start, commit);
+                    break;
+                }
+                if (common[c + 1] > start) {
+                    int gap = common[c + 1] - start;
+                    assign(line, gap, commit);
+                    start += gap;
+                    line += gap;
+                }
+                int len = Math.min(end, common[c + 1] + common[c + 2]) - start;
+                if (ncarried + 3 > carried.length) {
+                    carried = Arrays.copyOf(carried, 2 * carried.length + 3);
+                }
+                carried[ncarried] = common[c] + (start - common[c + 1]);
+                carried[ncarried + 1] = line;
+                carried[ncarried + 2] = len;
+                ncarried += 3;
+                start += len;
+                line += len;
+            }
+        }
+        _ranges = Arrays.copyOf(carried, ncarried);
+        _current = parentText;
+    }
+
+    /**
+     * Attribute every line not yet attributed to COMMIT, which has no
+     * parent to carry them to.
+     *
+     * @param commit id of the oldest commit reached.
+     */
+    void finish(String commit) {
+        for (int r = 0; r < _ranges.length; r += 3) {
+            assign(_ranges[r + 1], _ranges[r + 2], commit);
+        }
+        _ranges = new int[0];
+    }
+
+    /**
+     * @return the number of lines of the newest version
+     */
+    int size() {
+        return _commits.length;
+    }
+
+    /**
+     * @param line a 0-based line number of the newest version.
+     * @return id of the commit that last changed LINE
+     */
+    String commit(int line) {
+        return _commits[line];
+    }
+
+    /**
+     * Save this finished attribution to FILE.
+     *
+     * @param file file to write.
+     */
+    void write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        file.getParentFile().mkdirs();
+        HashMap<String, Integer> indices = new HashMap<>();
+        ArrayList<String> ids = new ArrayList<>();
+        for (String id : _commits) {
+            if (indices.putIfAbsent(id, ids.size()) == null) {
+                ids.add(id);
+            }
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                for (String id : ids) {
+                    Utils.writeString(out, id);
+                }
+                out.writeInt(_commits.length);
+                for (String id : _commits) {
+                    out.writeInt(indices.get(id));
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write blame cache: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the attribution saved in FILE for a file of LINES lines, or
+     * null if FILE does not exist or does not hold one that size.
+     *
+     * @param file a file written by write.
+     * @param lines number of lines of the file attributed.
+     * @return the attribution, or null
+     */
+    static Blame read(File file, int lines) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String[] ids = new String[in.readInt()];
+            for (int k = 0; k < ids.length; k += 1) {
+                ids[k] = Utils.readString(in);
+            }
+            if (in.readInt() != lines) {
+                return null;
+            }
+            Blame blame = new Blame("");
+            blame._commits = new String[lines];
+            for (int k = 0; k < lines; k += 1) {
+                blame._commits[k] = ids[in.readInt()];
+            }
+            return blame;
+        } catch (IOException | ArrayIndexOutOfBoundsException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the lines of CONTENTS, which may be null. A last line
+     * without a newline counts as a line.
+     *
+     * @param contents contents of a file.
+     * @return its lines
+     */
+    static List<String> lines(String contents) {
+        ArrayList<String> result = new ArrayList<>();
+        if (contents == null) {
+            return result;
+        }
+        int start = 0;
+        for (int end = contents.indexOf('\n'); end != -1;
+             end = contents.indexOf('\n', start)) {
+            result.add(contents.substring(start, end));
+            start = end + 1;
+        }
+        if (start < contents.length()) {
+            result.add(contents.substring(start));
+        }
+        return result;
+    }
+
+    /** Attribute LEN lines of the newest version from LINE to COMMIT. */
+    private void assign(int line, int len, String commit) {
+        Arrays.fill(_commits, line, line + len, commit);
+    }
+
+    /** Identifies a blame cache file. */
+    private static final int MAGIC = 0x474c424c;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Text of the version being attributed. */
+    private byte[] _current;
+
+    /** Unattributed lines as triples of their first line in _current,
+     *  the same line in the newest version, and their count, in order. */
+    private int[] _ranges;
+
+    /** Commit of each line of the newest version, or null. */
+    private String[] _commits;
+}
@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** A Bloom filter of strings. It answers whether a string might have
+ *  been added: a "no" is always right, a "yes" is wrong with roughly
+ *  the false-positive rate the filter was sized for. A filter with no
+ *  bits answers "yes" to everything.
+ *  @author Yusuf Quddus
+ */
+class BloomFilter {
+
+    /**
+     * A filter sized to hold EXPECTED strings with a false-positive
+     * rate of about FALSEPOSITIVERATE.
+     *
+     * @param expected number of strings that will be added.
+     * @param falsePositiveRate target rate, clamped to a sensible range.
+     */
+    BloomFilter(int expected, double falsePositiveRate) {
+        double rate = Math.min(MAX_RATE, Math.max(MIN_RATE,
+                Double.isNaN(falsePositiveRate) ? MAX_RATE
+                        : falsePositiveRate));
+        int n = Math.max(1, expected);
+        long bits = (long) Math.ceil(-n * Math.log(rate) / LN2_SQUARED);
+        _bits = new long[(int) Math.max(1, (bits + 63) / 64)];
+        _numHashes = (int) Math.max(1, Math.round(-Math.log(rate)
+                                                   / Math.log(2)));
+    }
+
+    /** A filter with NUMHASHES hash functions over BITS. */
+    private BloomFilter(long[] bits, int numHashes) {
+        _bits = bits;
+        _numHashes = numHashes;
+    }
+
+    /**
+     * @return a filter that might contain every string
+     */
+    static BloomFilter full() {
+        return new BloomFilter(new long[0], 0);
+    }
+
+    /**
+     * Add VALUE to this filter.
+     *
+     * @param value a string.
+     */
+    void add(String value) {
+        if (_bits.length == 0) {
+            return;
+        }
+        long numBits = (long) _bits.length * 64;
+        long h1 = hash(value), h2 = mix(h1) | 1;
+        for (int i = 0; i < _numHashes; i += 1) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            _bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param value a string.
+     * @return false if VALUE was certainly never added
+     */
+    boolean mightContain(String value) {
+        if (_bits.length == 0) {
+            return true;
+        }
+        long numBits = (long) _bits.length * 64;
+        long h1 = hash(value), h2 = mix(h1) | 1;
+        for (int i = 0; i < _numHashes; i += 1) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((_bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write this filter to OUT.
+     *
+     * @param out destination.
+     * @throws IOException
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeByte(_numHashes);
+        out.writeInt(_bits.length);
+        for (long word : _bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Read a filter written by write from IN.
+     *
+     * @param in source.
+     * @return the filter read
+     * @throws IOException
+     */
+    static BloomFilter read(DataInput in) throws IOException {
+        int numHashes = in.readUnsignedByte();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i += 1) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, numHashes);
+    }
+
+    /** Return the 64-bit FNV-1a hash of VALUE, scrambled. */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /** Return X scrambled by the SplitMix64 finalizer. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Bounds on the false-positive rate. */
+    private static final double MIN_RATE = 1e-6, MAX_RATE = 0.5;
+
+    /** The square of the natural log of 2. */
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    /** The bits of the filter. */
+    private final long[] _bits;
+
+    /** Number of bits set per string. */
+    private final int _numHashes;
+}
@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Bloom filters of the paths each commit changed relative to its first
+ *  parent, stored beside the commit-graph. A path-limited history walk
+ *  asks a commit's filter first and only compares snapshots when the
+ *  filter cannot rule the path out. A commit without a filter simply
+ *  has its snapshots compared.
+ *
+ *  The file is MAGIC and VERSION followed by appended records, each the
+ *  commit hash and its serialized BloomFilter. Appends are made under
+ *  a file lock, and a last record left incomplete by a crash is ignored
+ *  and later overwritten.
+ *  @author Yusuf Quddus
+ */
+class ChangedPaths {
+
+    /** Most changed paths kept in a filter; commits touching more get a
+     *  filter that matches every path. */
+    static final int MAX_PATHS = 512;
+
+    /** False-positive rate used when the config does not set one. */
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Load the filters stored in FILE, if any, for commits of GRAPH.
+     *
+     * @param file the filter file, which need not exist.
+     * @param graph the commit-graph the filters belong to.
+     */
+    ChangedPaths(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+        _filters = new HashMap<>();
+        _pending = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            _end = readRecords(channel, 0);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read changed paths: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return the changed-path filter of POS, or null if it has none
+     */
+    BloomFilter get(int pos) {
+        return _filters.get(pos);
+    }
+
+    /**
+     * Record that the commit at POS changed PATHS. The filter is kept
+     * in memory until flush.
+     *
+     * @param pos a position in the graph.
+     * @param paths changed paths, as returned by changed.
+     * @param falsePositiveRate target false-positive rate of the filter.
+     */
+    void put(int pos, Set<String> paths, double falsePositiveRate) {
+        BloomFilter filter;
+        if (paths.size() > MAX_PATHS) {
+            filter = BloomFilter.full();
+        } else {
+            filter = new BloomFilter(paths.size(), falsePositiveRate);
+            for (String path : paths) {
+                filter.add(path);
+            }
+        }
+        _filters.put(pos, filter);
+        _pending.put(pos, filter);
+    }
+
+    /** Append the filters added since the last flush to the file, holding
+     *  a FileLock on it as CommitGraph does for its appends, so writers
+     *  in different worktrees cannot interleave. Records other processes appended
+     *  meanwhile are read first, and a record a crash cut short is cut
+     *  off before appending. */
+    void flush() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        _file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                long end = readRecords(channel, _end);
+                channel.truncate(end);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                if (end == 0) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                }
+                for (Map.Entry<Integer, BloomFilter> entry
+                        : _pending.entrySet()) {
+                    out.writeUTF(_graph.hash(entry.getKey()));
+                    entry.getValue().write(out);
+                }
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining()) {
+                    channel.write(buf, end + buf.position());
+                }
+                _end = end + buf.limit();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write changed paths: %s",
+                              excp.getMessage());
+        }
+        _pending.clear();
+    }
+
+    /** Read the records of the file open on CHANNEL from offset FROM,
+     *  which is 0 or the end of a record, keeping the filters of commits
+     *  in the graph. Return the offset just past the last complete
+     *  record: a record cut short, as a crash can leave one, is treated
+     *  as the end of the file, and so is a header cut short. */
+    private long readRecords(FileChannel channel, long from)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) (channel.size() - from));
+        while (buf.hasRemaining()
+               && channel.read(buf, from + buf.position()) >= 0) {
+            continue;
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream(buf.array(),
+                0, buf.position());
+        DataInputStream in = new DataInputStream(bytes);
+        int length = buf.position();
+        if (from == 0) {
+            if (length < HEADER) {
+                return 0;
+            }
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unrecognized changed-path file %s",
+                                  _file);
+            }
+        }
+        long end = from + length - bytes.available();
+        while (true) {
+            try {
+                String hash = in.readUTF();
+                BloomFilter filter = BloomFilter.read(in);
+                int pos = _graph.position(hash);
+                if (pos != CommitGraph.NONE) {
+                    _filters.put(pos, filter);
+                }
+            } catch (EOFException excp) {
+                return end;
+            }
+            end = from + length - bytes.available();
+        }
+    }
+
+    /**
+     * Return the paths that differ between snapshots FILES and
+     * PARENTFILES, with every directory containing one of them.
+     *
+     * @param files files of a commit, keyed by blob hash.
+     * @param parentFiles files of its first parent, keyed by blob hash.
+     * @return changed files and their directories
+     */
+    static TreeSet<String> changed(Map<String, Blob> files,
+                                   Map<String, Blob> parentFiles) {
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, Blob> entry : files.entrySet()) {
+            if (!parentFiles.containsKey(entry.getKey())) {
+                addWithDirectories(result, entry.getValue().getName());
+            }
+        }
+        for (Map.Entry<String, Blob> entry : parentFiles.entrySet()) {
+            if (!files.containsKey(entry.getKey())) {
+                addWithDirectories(result, entry.getValue().getName());
+            }
+        }
+        return result;
+    }
+
+    /** Add NAME and each of its directories to PATHS. */
+    private static void addWithDirectories(Set<String> paths, String name) {
+        for (int slash = name.indexOf('/'); slash >= 0;
+             slash = name.indexOf('/', slash + 1)) {
+            paths.add(name.substring(0, slash));
+        }
+        paths.add(name);
+    }
+
+    /** Identifies a changed-path file. */
+    private static final int MAGIC = 0x474c4346;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Bytes of MAGIC and VERSION. */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /** The changed-path file. */
+    private final File _file;
+
+    /** The commit-graph whose positions the filters belong to. */
+    private final CommitGraph _graph;
+
+    /** Filter of each commit that has one. */
+    private final HashMap<Integer, BloomFilter> _filters;
+
+    /** Filters not yet written to _file. */
+    private final LinkedHashMap<Integer, BloomFilter> _pending;
+
+    /** Offset just past the last complete record read or written. */
+    private long _end;
+}
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** The thin client of Daemon: sends its arguments to the daemon of the
+ *  repository in the current directory and prints what the command
+ *  prints, exiting with its status. Without a daemon it runs the command
+ *  itself, through Main, so it can always be used in place of Main.
+ *  @author Yusuf Quddus
+ */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are as for Main. */
+    public static void main(String[] args) throws IOException {
+        int status = send(SOCKET, args);
+        if (status < 0) {
+            Main.main(args);
+        } else {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Run the command ARGS in the daemon listening on SOCKET, copying
+     * its output to standard output and standard error.
+     *
+     * @param socket path of the daemon's socket.
+     * @param args command-line arguments.
+     * @return the command's exit status, or -1 if no daemon is listening
+     * @throws IOException if the output cannot be written.
+     */
+    static int send(Path socket, String[] args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (channel) {
+            DataOutputStream request =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                Utils.writeString(request, arg);
+            }
+            request.flush();
+            DataInputStream reply =
+                new DataInputStream(Channels.newInputStream(channel));
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            OutputStream err = new FileOutputStream(FileDescriptor.err);
+            byte[] buf = new byte[BUFFER];
+            while (true) {
+                int kind = reply.readByte();
+                if (kind == Daemon.EXIT) {
+                    return reply.readInt();
+                }
+                for (int left = reply.readInt(); left > 0;) {
+                    int n = reply.read(buf, 0, Math.min(left, buf.length));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    (kind == Daemon.OUT ? out : err).write(buf, 0, n);
+                    left -= n;
+                }
+            }
+        } catch (EOFException excp) {
+            System.err.println("The gitlet daemon stopped before the"
+                               + " command finished.");
+            return 1;
+        }
+    }
+
+    /** The daemon's socket in the current directory's .gitlet. */
+    static final Path SOCKET = Paths.get(System.getProperty("user.dir"),
+                                         ".gitlet", "daemon.sock");
+
+    /** Bytes copied at a time. */
+    private static final int BUFFER = 1 << 16;
+}
@@ -3,6 +3,8 @@ package gitlet;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.TreeMap;
 
 public class Commit implements Serializable {
@@ -51,6 +53,21 @@ public class Commit implements Serializable {
         return _timestamp;
     }
 
+    /**
+     * @return the timestamp of this commit in seconds since the epoch,
+     *         or 0 if it cannot be parsed
+     */
+    public long getEpochSecond() {
+        for (DateTimeFormatter format : TIMESTAMP_PARSERS) {
+            try {
+                return ZonedDateTime.parse(_timestamp, format).toEpochSecond();
+            } catch (DateTimeParseException excp) {
+                continue;
+            }
+        }
+        return 0;
+    }
+
     /**
      * @return map of files this commit tracks
      */
@@ -66,10 +83,20 @@ public class Commit implements Serializable {
      */
     private String setTimestamp() {
         ZonedDateTime myDateObj = ZonedDateTime.now();
-        return DateTimeFormatter.ofPattern("E MMM dd HH:mm:ss"
-                + " yyyy xx").format(myDateObj);
+        return DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN)
+                .format(myDateObj);
     }
 
+    /** Format of commit timestamps. */
+    private static final String TIMESTAMP_PATTERN = "E MMM dd HH:mm:ss yyyy xx";
+
+    /** Parsers for timestamps written in the default locale or, like the
+     *  initial commit's, in English. */
+    private static final DateTimeFormatter[] TIMESTAMP_PARSERS = {
+        DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN),
+        DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN, Locale.US)
+    };
+
     /** Log associated with this commit. */
     private String _message;
 
@@ -0,0 +1,468 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** The commit-graph: a memory-mapped file giving each commit a dense
+ *  integer position along with the positions of its parents, its
+ *  generation number and its timestamp. Commits are appended as they
+ *  are made, so a commit's parents always have smaller positions than
+ *  it does. History walks use positions and never need to deserialize
+ *  a Commit.
+ *
+ *  The file is a header of MAGIC, VERSION and the number of commits,
+ *  followed by one fixed-width record per commit: the 20 bytes of its
+ *  SHA-1, the positions of its first and second parents (NONE if
+ *  absent), its generation number and its timestamp in epoch seconds.
+ *  @author Yusuf Quddus
+ */
+class CommitGraph {
+
+    /** Parent position of a commit without that parent. */
+    static final int NONE = -1;
+
+    /**
+     * Open the commit-graph in FILE, creating an empty one if it does
+     * not exist yet. Commits appended by other processes are picked up
+     * by ensure.
+     *
+     * @param file the commit-graph file.
+     */
+    CommitGraph(File file) {
+        _file = file;
+        _index = new HashMap<>();
+        try {
+            if (!file.exists() || file.length() < HEADER_SIZE) {
+                file.getParentFile().mkdirs();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(0).flip();
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.write(header, 0);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot create commit-graph: %s",
+                              excp.getMessage());
+        }
+        refresh();
+        if (_buffer.getInt(0) != MAGIC || _buffer.getInt(4) != VERSION) {
+            throw Utils.error("Unrecognized commit-graph %s", file);
+        }
+    }
+
+    /**
+     * @return number of commits in the graph
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * @param hash a commit hash.
+     * @return position of HASH, or NONE if it is not in the graph
+     */
+    int position(String hash) {
+        Integer pos = _index.get(hash);
+        return pos == null ? NONE : pos;
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return hash of the commit at POS
+     */
+    String hash(int pos) {
+        return _hashes[pos];
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return position of the first parent of POS, or NONE
+     */
+    int parent(int pos) {
+        return _buffer.getInt(offset(pos) + PARENT_OFFSET);
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return position of the second parent of POS, or NONE
+     */
+    int secondParent(int pos) {
+        return _buffer.getInt(offset(pos) + PARENT_OFFSET + 4);
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return generation number of POS: 1 for a root commit, otherwise
+     *         one more than the largest generation of its parents
+     */
+    int generation(int pos) {
+        return _buffer.getInt(offset(pos) + GENERATION_OFFSET);
+    }
+
+    /**
+     * @param pos a position in the graph.
+     * @return commit time of POS in seconds since the epoch
+     */
+    long timestamp(int pos) {
+        return _buffer.getLong(offset(pos) + TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Return the position of commit HASH, first appending it and any of
+     * its ancestors missing from the graph. Only missing commits are
+     * read, through LOADER.
+     *
+     * @param hash a commit hash.
+     * @param loader reads the commit with a given hash.
+     * @return position of HASH
+     */
+    int ensure(String hash, Function<String, Commit> loader) {
+        if (position(hash) == NONE) {
+            refresh();
+        }
+        if (position(hash) != NONE) {
+            return position(hash);
+        }
+        HashMap<String, Commit> loaded = new HashMap<>();
+        LinkedHashMap<String, Commit> missing = new LinkedHashMap<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(hash);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (position(top) != NONE || missing.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = loaded.computeIfAbsent(top, loader);
+            boolean ready = true;
+            for (String parent : parents(commit)) {
+                if (position(parent) == NONE && !missing.containsKey(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                missing.put(top, commit);
+            }
+        }
+        append(missing);
+        return position(hash);
+    }
+
+    /**
+     * Append commit COMMIT with hash HASH, whose parents must already be
+     * in the graph.
+     *
+     * @param hash hash of COMMIT.
+     * @param commit a commit.
+     * @return position of HASH
+     */
+    int add(String hash, Commit commit) {
+        if (position(hash) == NONE) {
+            LinkedHashMap<String, Commit> one = new LinkedHashMap<>();
+            one.put(hash, commit);
+            append(one);
+        }
+        return position(hash);
+    }
+
+    /**
+     * Append the records of COMMITS, keyed by hash, in one locked write.
+     * Each commit's parents must be in the graph or earlier in COMMITS.
+     *
+     * @param commits commits to append, parents before children.
+     */
+    private void append(LinkedHashMap<String, Commit> commits) {
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                appendLocked(channel, commits);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update commit-graph: %s",
+                              excp.getMessage());
+        }
+        refresh();
+    }
+
+    /** Append the records of COMMITS through CHANNEL, whose file lock is
+     *  held. */
+    private void appendLocked(FileChannel channel,
+                              LinkedHashMap<String, Commit> commits)
+            throws IOException {
+        refresh();
+        int count = _size;
+        HashMap<String, Integer> pending = new HashMap<>();
+        ArrayList<Integer> generations = new ArrayList<>();
+        ByteBuffer records =
+            ByteBuffer.allocate(commits.size() * RECORD_SIZE);
+        for (Map.Entry<String, Commit> entry : commits.entrySet()) {
+            if (position(entry.getKey()) != NONE) {
+                continue;
+            }
+            String[] parents = parents(entry.getValue());
+            int[] parentPos = {NONE, NONE};
+            int generation = 1;
+            for (int i = 0; i < parents.length; i += 1) {
+                Integer p = pending.get(parents[i]);
+                int parentGeneration;
+                if (p != null) {
+                    parentPos[i] = p;
+                    parentGeneration = generations.get(p - count);
+                } else if (position(parents[i]) != NONE) {
+                    parentPos[i] = position(parents[i]);
+                    parentGeneration = generation(parentPos[i]);
+                } else {
+                    throw Utils.error("Parent %s of %s is not in the "
+                                      + "commit-graph", parents[i],
+                                      entry.getKey());
+                }
+                generation = Math.max(generation, parentGeneration + 1);
+            }
+            pending.put(entry.getKey(), count + generations.size());
+            generations.add(generation);
+            records.put(fromHex(entry.getKey())).putInt(parentPos[0])
+                .putInt(parentPos[1]).putInt(generation)
+                .putLong(entry.getValue().getEpochSecond());
+        }
+        records.flip();
+        channel.write(records, HEADER_SIZE + (long) count * RECORD_SIZE);
+        ByteBuffer newCount = ByteBuffer.allocate(4);
+        newCount.putInt(count + generations.size()).flip();
+        channel.write(newCount, COUNT_OFFSET);
+    }
+
+    /**
+     * Return the best common ancestors of positions ONE and TWO: common
+     * ancestors that are not ancestors of another common ancestor. There
+     * is usually one, but criss-cross merges can leave several. Commits
+     * are painted with the side they are reachable from in order of
+     * decreasing generation number, so the walk stops as soon as every
+     * commit left to visit is below a common ancestor.
+     *
+     * @param one a position in the graph.
+     * @param two a position in the graph.
+     * @return positions of the best common ancestors, newest first
+     */
+    int[] mergeBases(int one, int two) {
+        if (one == two) {
+            return new int[] {one};
+        }
+        byte[] flags = new byte[_size];
+        boolean[] queued = new boolean[_size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(_newestFirst);
+        ArrayList<Integer> found = new ArrayList<>();
+        flags[one] |= ONE;
+        flags[two] |= TWO;
+        queue.add(one);
+        queue.add(two);
+        queued[one] = queued[two] = true;
+        int nonStale = 2;
+
+        while (nonStale > 0) {
+            int pos = queue.poll();
+            queued[pos] = false;
+            int paint = flags[pos] & (ONE | TWO | STALE);
+            if ((paint & STALE) == 0) {
+                nonStale -= 1;
+            }
+            if (paint == (ONE | TWO)) {
+                if ((flags[pos] & RESULT) == 0) {
+                    flags[pos] |= RESULT;
+                    found.add(pos);
+                }
+                paint |= STALE;
+            }
+            for (int parent : new int[] {parent(pos), secondParent(pos)}) {
+                if (parent == NONE || (flags[parent] & paint) == paint) {
+                    continue;
+                }
+                boolean wasStale = (flags[parent] & STALE) != 0;
+                flags[parent] |= paint;
+                boolean isStale = (flags[parent] & STALE) != 0;
+                if (!queued[parent]) {
+                    queued[parent] = true;
+                    queue.add(parent);
+                    if (!isStale) {
+                        nonStale += 1;
+                    }
+                } else if (!wasStale && isStale) {
+                    nonStale -= 1;
+                }
+            }
+        }
+        return removeRedundant(found);
+    }
+
+    /**
+     * Return the positions in CANDIDATES that are not ancestors of
+     * another candidate, newest first.
+     *
+     * @param candidates common ancestors found by mergeBases.
+     */
+    private int[] removeRedundant(ArrayList<Integer> candidates) {
+        candidates.sort(_newestFirst);
+        if (candidates.size() > 1) {
+            int minGeneration = Integer.MAX_VALUE;
+            for (int pos : candidates) {
+                minGeneration = Math.min(minGeneration, generation(pos));
+            }
+            boolean[] reached = new boolean[_size];
+            ArrayDeque<Integer> work = new ArrayDeque<>(candidates);
+            while (!work.isEmpty()) {
+                int pos = work.pop();
+                for (int parent : new int[] {parent(pos),
+                                             secondParent(pos)}) {
+                    if (parent != NONE && !reached[parent]
+                        && generation(parent) >= minGeneration) {
+                        reached[parent] = true;
+                        work.push(parent);
+                    }
+                }
+            }
+            candidates.removeIf(pos -> reached[pos]);
+        }
+        int[] result = new int[candidates.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = candidates.get(i);
+        }
+        return result;
+    }
+
+    /** Map the file again and index any commits appended since it was
+     *  last read, by this or another process. */
+    private void refresh() {
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                  channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit-graph: %s",
+                              excp.getMessage());
+        }
+        int count = _buffer.getInt(COUNT_OFFSET);
+        if (_hashes == null || _hashes.length < count) {
+            String[] hashes = new String[Math.max(count, 16) * 2];
+            if (_hashes != null) {
+                System.arraycopy(_hashes, 0, hashes, 0, _size);
+            }
+            _hashes = hashes;
+        }
+        byte[] raw = new byte[HASH_SIZE];
+        for (int pos = _size; pos < count; pos += 1) {
+            _buffer.get(offset(pos), raw);
+            _hashes[pos] = toHex(raw);
+            _index.put(_hashes[pos], pos);
+        }
+        _size = count;
+    }
+
+    /** Return the byte offset of the record for position POS. */
+    private static int offset(int pos) {
+        return HEADER_SIZE + pos * RECORD_SIZE;
+    }
+
+    /** Return the hashes of the parents of COMMIT. */
+    static String[] parents(Commit commit) {
+        String parent = commit.getParent();
+        if (parent == null || parent.equals("")) {
+            return new String[0];
+        } else if (commit instanceof MergeCommit) {
+            return new String[] {parent,
+                                 ((MergeCommit) commit).getSecondParent()};
+        }
+        return new String[] {parent};
+    }
+
+    /** Return the 20 bytes written as the hexadecimal numeral HEX. */
+    private static byte[] fromHex(String hex) {
+        byte[] result = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return BYTES as a lowercase hexadecimal numeral. */
+    private static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Orders positions by decreasing generation number, then by
+     *  decreasing timestamp and position. */
+    private final Comparator<Integer> _newestFirst = (a, b) -> {
+        int cmp = Integer.compare(generation(b), generation(a));
+        if (cmp == 0) {
+            cmp = Long.compare(timestamp(b), timestamp(a));
+        }
+        return cmp != 0 ? cmp : Integer.compare(b, a);
+    };
+
+    /** Paint flags used by mergeBases. */
+    private static final byte ONE = 1, TWO = 2, STALE = 4, RESULT = 8;
+
+    /** Identifies a commit-graph file. */
+    private static final int MAGIC = 0x474c4347;
+
+    /** Version of the record layout. */
+    private static final int VERSION = 1;
+
+    /** Offset of the commit count in the header. */
+    private static final int COUNT_OFFSET = 8;
+
+    /** Bytes in the header. */
+    private static final int HEADER_SIZE = 12;
+
+    /** Bytes in a raw SHA-1. */
+    private static final int HASH_SIZE = 20;
+
+    /** Offsets of the fields of a record. */
+    private static final int PARENT_OFFSET = HASH_SIZE,
+        GENERATION_OFFSET = PARENT_OFFSET + 8,
+        TIMESTAMP_OFFSET = GENERATION_OFFSET + 4;
+
+    /** Bytes in a record. */
+    private static final int RECORD_SIZE = TIMESTAMP_OFFSET + 8;
+
+    /** Digits of hexadecimal numerals. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The commit-graph file. */
+    private final File _file;
+
+    /** Read-only mapping of _file. */
+    private MappedByteBuffer _buffer;
+
+    /** Number of commits indexed so far. */
+    private int _size;
+
+    /** Hash of the commit at each position. */
+    private String[] _hashes;
+
+    /** Position of each commit hash. */
+    private final HashMap<String, Integer> _index;
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/** Reads every commit in a directory of loose commits in parallel. The
+ *  sorted commit ids are cut into batches; each batch is split across
+ *  a ForkJoinPool whose workers deserialize and filter their commits
+ *  independently, and the batch's results are joined back in id order
+ *  before the next batch starts. Output is therefore in the same order
+ *  as a sequential scan, and only one batch is held in memory.
+ *  @author Yusuf Quddus
+ */
+class CommitScanner {
+
+    /**
+     * A scanner of the commits in DIR.
+     *
+     * @param dir directory holding one file per commit, named by its id.
+     */
+    CommitScanner(File dir) {
+        _dir = dir;
+    }
+
+    /**
+     * Apply MAPPER to the id and contents of every commit and pass the
+     * non-null results to SINK in increasing order of commit id, until
+     * SINK returns false.
+     *
+     * @param mapper turns a commit into a result, or null to skip it.
+     *               It is called on worker threads.
+     * @param sink receives the results on the calling thread.
+     * @param <T> type of result.
+     */
+    <T> void scan(BiFunction<String, Commit, T> mapper, Predicate<T> sink) {
+        String[] ids = _dir.list();
+        if (ids == null) {
+            return;
+        }
+        Arrays.sort(ids);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (int start = 0; start < ids.length; start += BATCH_SIZE) {
+                int end = Math.min(ids.length, start + BATCH_SIZE);
+                for (T result
+                        : pool.invoke(new Task<>(_dir, ids, start, end,
+                                                 mapper))) {
+                    if (!sink.test(result)) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Maps the commits IDS[START .. END - 1], splitting the range in
+     *  half until it is small enough to do directly. */
+    private static class Task<T> extends RecursiveTask<List<T>> {
+
+        /** A task mapping the commits IDS[START .. END - 1] in DIR with
+         *  MAPPER. */
+        Task(File dir, String[] ids, int start, int end,
+             BiFunction<String, Commit, T> mapper) {
+            _dir = dir;
+            _ids = ids;
+            _start = start;
+            _end = end;
+            _mapper = mapper;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (_end - _start <= LEAF_SIZE) {
+                ArrayList<T> result = new ArrayList<>();
+                for (int i = _start; i < _end; i += 1) {
+                    Commit commit = Utils.readObject(
+                            Utils.join(_dir, _ids[i]), Commit.class);
+                    T mapped = _mapper.apply(_ids[i], commit);
+                    if (mapped != null) {
+                        result.add(mapped);
+                    }
+                }
+                return result;
+            }
+            int mid = (_start + _end) >>> 1;
+            Task<T> left = new Task<>(_dir, _ids, _start, mid, _mapper);
+            left.fork();
+            List<T> right =
+                new Task<>(_dir, _ids, mid, _end, _mapper).compute();
+            List<T> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** The directory of commits. */
+        private final File _dir;
+        /** Commit ids. */
+        private final String[] _ids;
+        /** Range of _ids mapped by this task. */
+        private final int _start, _end;
+        /** Turns a commit into a result. */
+        private final BiFunction<String, Commit, T> _mapper;
+    }
+
+    /** Commits read before results are handed on. */
+    private static final int BATCH_SIZE = 8192;
+
+    /** Commits read by one task without splitting. */
+    private static final int LEAF_SIZE = 64;
+
+    /** The directory of commits. */
+    private final File _dir;
+}
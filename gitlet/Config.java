@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/** Repository settings, stored as key=value lines in .gitlet/config
+ *  and shared by every worktree.
+ *  @author Yusuf Quddus
+ */
+class Config {
+
+    /** Target false-positive rate of changed-path Bloom filters. */
+    static final String BLOOM_FALSE_POSITIVE_RATE =
+        "bloom.falsePositiveRate";
+
+    /** Branch that status and branch -v count commits ahead of and
+     *  behind; master if unset. */
+    static final String UPSTREAM = "branch.upstream";
+
+    /** Algorithm used by the diff command: myers or histogram. */
+    static final String DIFF_ALGORITHM = "diff.algorithm";
+
+    /**
+     * Load the settings in FILE, which need not exist.
+     *
+     * @param file the config file.
+     */
+    Config(File file) {
+        _file = file;
+        _properties = new Properties();
+        if (file.isFile()) {
+            try (Reader in = new FileReader(file)) {
+                _properties.load(in);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read config: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param key a setting name.
+     * @return the value of KEY, or null if it is not set
+     */
+    String get(String key) {
+        return _properties.getProperty(key);
+    }
+
+    /**
+     * @param key a setting name.
+     * @param otherwise value to use if KEY is unset or not a number.
+     * @return the value of KEY as a number
+     */
+    double getDouble(String key, double otherwise) {
+        String value = get(key);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException excp) {
+                return otherwise;
+            }
+        }
+        return otherwise;
+    }
+
+    /**
+     * Set KEY to VALUE and save the settings.
+     *
+     * @param key a setting name.
+     * @param value its new value.
+     */
+    void set(String key, String value) {
+        _properties.setProperty(key, value);
+        try (Writer out = new FileWriter(_file)) {
+            _properties.store(out, null);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write config: %s", excp.getMessage());
+        }
+    }
+
+    /** The config file. */
+    private final File _file;
+
+    /** Settings read from _file. */
+    private final Properties _properties;
+}
@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** A process that runs gitlet commands for Client over a Unix domain
+ *  socket in .gitlet, so the commands share one warm JVM and the
+ *  repository state Gitlet caches between them. Commands run one at a
+ *  time, in the order they connect.
+ *
+ *  A request is the number of arguments and then each argument, as
+ *  written by Utils.writeString. The reply is a sequence of frames, each
+ *  a kind byte: OUT or ERR followed by a length and that many bytes of
+ *  standard output or standard error, or EXIT followed by the exit
+ *  status, which ends the reply. While a command runs,
+ *  Main.exitWithError throws Exit instead of exiting.
+ *  @author Yusuf Quddus
+ */
+class Daemon {
+
+    /** Thrown by Main.exitWithError in place of exiting the process. */
+    static class Exit extends RuntimeException {
+        /** An exit from the current command. */
+        Exit() {
+            super(null, null, false, false);
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Serve commands on SOCKET until a daemon --stop command arrives.
+     * A socket file left by a daemon that is no longer running is
+     * replaced.
+     *
+     * @param socket path of the socket to listen on.
+     */
+    static void serve(Path socket) {
+        try (SocketChannel running =
+                 SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            running.connect(UnixDomainSocketAddress.of(socket));
+            Main.exitWithError("A gitlet daemon is already running.");
+        } catch (IOException excp) {
+            /* Nothing is listening, so start. */
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(socket);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Thread cleanup = new Thread(() -> socket.toFile().delete());
+            Runtime.getRuntime().addShutdownHook(cleanup);
+            _stopping = false;
+            while (!_stopping) {
+                try (SocketChannel client = server.accept()) {
+                    run(client);
+                } catch (IOException excp) {
+                    /* The client went away; serve the next one. */
+                    continue;
+                }
+            }
+            Files.deleteIfExists(socket);
+            Runtime.getRuntime().removeShutdownHook(cleanup);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot serve on %s: %s", socket,
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * @return true while a command from a client is running
+     */
+    static boolean serving() {
+        return _output != null;
+    }
+
+    /**
+     * @return the client's standard output while a command is running,
+     *         which closing only flushes, or else null
+     */
+    static OutputStream output() {
+        return _output;
+    }
+
+    /** Stop serving once the current command has replied. */
+    static void stop() {
+        _stopping = true;
+    }
+
+    /** Read a command from CLIENT, run it and send its output and exit
+     *  status back. */
+    private static void run(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = Utils.readString(in);
+        }
+        DataOutputStream reply = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        BufferedOutputStream out =
+            new BufferedOutputStream(new Frames(reply, OUT), BUFFER);
+        PrintStream err = new PrintStream(new Frames(reply, ERR), true);
+        PrintStream stdout = System.out, stderr = System.err;
+        System.setOut(new PrintStream(out));
+        System.setErr(err);
+        _output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                    throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+        int status = 0;
+        boolean completed = false;
+        Main.GITLET.beginCommand();
+        try {
+            Main.main(args);
+            completed = true;
+        } catch (Exit excp) {
+            status = 0;
+        } catch (Exception | Error excp) {
+            status = 1;
+            System.out.flush();
+            err.print("Exception in thread \"main\" ");
+            trimStackTrace(excp);
+            excp.printStackTrace(err);
+        } finally {
+            Main.GITLET.endCommand(completed);
+            System.out.flush();
+            err.flush();
+            _output = null;
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        reply.writeByte(EXIT);
+        reply.writeInt(status);
+        reply.flush();
+    }
+
+    /** Drop the frames of EXCP's stack trace that belong to the daemon
+     *  rather than the command, so it prints as it would in a process of
+     *  its own. */
+    private static void trimStackTrace(Throwable excp) {
+        StackTraceElement[] trace = excp.getStackTrace();
+        for (int i = 0; i < trace.length; i += 1) {
+            if (trace[i].getClassName().equals(Daemon.class.getName())) {
+                excp.setStackTrace(Arrays.copyOf(trace, i));
+                return;
+            }
+        }
+    }
+
+    /** Sends everything written to it as frames of one kind. */
+    private static class Frames extends OutputStream {
+
+        /** Frames of kind KIND written to REPLY. */
+        Frames(DataOutputStream reply, int kind) {
+            _reply = reply;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                _reply.writeByte(_kind);
+                _reply.writeInt(len);
+                _reply.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _reply.flush();
+        }
+
+        /** Where frames are written. */
+        private final DataOutputStream _reply;
+
+        /** Kind of every frame. */
+        private final int _kind;
+    }
+
+    /** Kinds of reply frame. */
+    static final int OUT = 1, ERR = 2, EXIT = 3;
+
+    /** Bytes of standard output buffered before a frame is sent. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Standard output of the running command, or null. */
+    private static OutputStream _output;
+
+    /** True once a daemon --stop command has run. */
+    private static boolean _stopping;
+}
@@ -1,55 +1,110 @@
 package gitlet;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  The common subsequence is found with Myers' O((N + M) D)
+ *  algorithm in its linear-space form, so memory stays proportional to
+ *  the lengths of the sequences rather than their product.  A histogram
+ *  diff may be chosen instead.  Lines are interned to int ids as they are
+ *  read, so the algorithms compare ints rather than strings.  Text given
+ *  as bytes is split and hashed by LineIndex, so its lines are interned
+ *  without making a String for each.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The ways a longest common subsequence may be found. */
+    public enum Algorithm {
+        /** Myers' shortest edit script: a minimal diff. */
+        MYERS,
+        /** Anchors on the rarest lines first, so repeated lines such as
+         *  braces and blank lines do not pull unrelated text together. */
+        HISTOGRAM
+    }
+
+    /** Set the algorithm used to compare the sequences to ALGORITHM.
+     *  The default is MYERS. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+        _common = null;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
+        HashMap<String, Integer> table = new HashMap<>();
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _ids1 = new int[_lines1.size()];
+        _ids2 = new int[_lines2.size()];
+        for (int k = 0; k < _ids1.length; k += 1) {
+            _ids1[k] = intern(table, _lines1.get(k));
+        }
+        for (int k = 0; k < _ids2.length; k += 1) {
+            _ids2[k] = intern(table, _lines2.get(k));
+        }
+        _numIds = table.size();
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
-     *  of FILE1 and FILE2.  Null Files set empty lists. */
+     *  of FILE1 and FILE2.  Null Files set empty lists.  As with
+     *  Files.readAllLines, lines end at "\n", "\r\n" or "\r" and are
+     *  compared without their terminators, so files differing only in
+     *  line endings or a final newline are equal. */
     public void setSequences(File file1, File file2) {
-        try {
-            Path p1 = file1.toPath();
-            _lines1 = Files.readAllLines(p1);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines1 = Collections.emptyList();
-        }
-        try {
-            Path p2 = file2.toPath();
-            _lines2 = Files.readAllLines(p2);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines2 = Collections.emptyList();
+        setSequences(withNewlines(readBytes(file1)),
+                     withNewlines(readBytes(file2)));
+    }
+
+    /** Set the sequences currently being compared to the lines of TEXT1
+     *  and TEXT2, which must not change afterwards.  A line includes its
+     *  newline, so a last line without one differs from one with it;
+     *  lines are decoded as UTF-8 only when asked for. */
+    public void setSequences(byte[] text1, byte[] text2) {
+        LineIndex index1 = new LineIndex(text1);
+        LineIndex index2 = new LineIndex(text2);
+        _lines1 = index1.asList();
+        _lines2 = index2.asList();
+        int size = Integer.highestOneBit(
+            Math.max(1, 2 * (index1.size() + index2.size())) * 2 - 1);
+        int[] slots = new int[size];
+        LineIndex[] firstIndex = new LineIndex[index1.size() + index2.size()];
+        int[] firstLine = new int[firstIndex.length];
+        _numIds = 0;
+        _ids1 = new int[index1.size()];
+        _ids2 = new int[index2.size()];
+        for (LineIndex index : new LineIndex[] { index1, index2 }) {
+            int[] ids = index == index1 ? _ids1 : _ids2;
+            for (int k = 0; k < ids.length; k += 1) {
+                long h = index.hash(k);
+                int slot = (int) (h ^ (h >>> 32)) & (size - 1);
+                while (slots[slot] != 0
+                       && !index.equal(k, firstIndex[slots[slot] - 1],
+                                       firstLine[slots[slot] - 1])) {
+                    slot = (slot + 1) & (size - 1);
+                }
+                if (slots[slot] == 0) {
+                    firstIndex[_numIds] = index;
+                    firstLine[_numIds] = k;
+                    _numIds += 1;
+                    slots[slot] = _numIds;
+                }
+                ids[k] = slots[slot] - 1;
+            }
         }
-        _lls = null;
-        _todo = null;
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -76,59 +131,18 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
-            return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
+        k1 = Math.min(k1, _lines1.size());
+        k2 = Math.min(k2, _lines2.size());
+        if (k1 == _lines1.size() && k2 == _lines2.size()) {
+            int result;
+            result = 0;
+            int[] common = commonSubsequence();
+            for (int k = 2; k < common.length; k += 3) {
+                result += common[k];
             }
+            return result;
         }
-        return _lls[k1][k2];
+        return (k1 + k2 - editDistance(k1, k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
@@ -145,19 +159,12 @@ public class Diff {
         if (_lines1.size() != _lines2.size()) {
             return false;
         }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
-    }
-
-    /** Return an array containing the int values of the items in LIST. */
-    private int[] toIntArr(Collection<Integer> list) {
-        int[] result = new int[list.size()];
-        int i;
-        i = 0;
-        for (int x : list) {
-            result[i] = x;
-            i += 1;
+        for (int k = 0; k < _lines1.size(); k += 1) {
+            if (!equal(k, k)) {
+                return false;
+            }
         }
-        return result;
+        return true;
     }
 
     /** Return largest common subsequence of the sequences being compared as
@@ -166,30 +173,19 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
+        checkData();
+        if (_common == null) {
+            _runs = new int[3 * 16];
+            _nruns = 0;
+            if (_algorithm == Algorithm.HISTOGRAM) {
+                histogram(0, _lines1.size(), 0, _lines2.size());
             } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
+                common(0, _lines1.size(), 0, _lines2.size());
             }
+            _common = Arrays.copyOf(_runs, _nruns);
+            _runs = null;
         }
-        return toIntArr(resultList);
+        return _common;
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -232,45 +228,349 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Return true iff line I1 of the first sequence equals line I2 of the
+     *  second. */
+    private boolean equal(int i1, int i2) {
+        return _ids1[i1] == _ids2[i2];
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Return the id of LINE in TABLE, adding it with the next free id if
+     *  it is new.  Equal lines of either sequence get equal ids. */
+    private static int intern(HashMap<String, Integer> table, String line) {
+        Integer id = table.putIfAbsent(line, table.size());
+        return id == null ? table.size() - 1 : id;
+    }
+
+    /** Return TEXT with every line ending, "\r\n" or "\r" included,
+     *  made "\n", and a "\n" added after a last line without one. */
+    private static byte[] withNewlines(byte[] text) {
+        byte[] result = new byte[text.length + 1];
+        int n = 0;
+        for (int i = 0; i < text.length; i += 1) {
+            if (text[i] != '\r') {
+                result[n++] = text[i];
+            } else if (i + 1 == text.length || text[i + 1] != '\n') {
+                result[n++] = '\n';
+            }
+        }
+        if (n > 0 && result[n - 1] != '\n') {
+            result[n++] = '\n';
+        }
+        return Arrays.copyOf(result, n);
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Return the contents of FILE, or no bytes if it cannot be read. */
+    private static byte[] readBytes(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException | InvalidPathException | NullPointerException
+                 excp) {
+            return new byte[0];
+        }
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Return the number of lines deleted plus the number inserted by a
+     *  shortest edit from the first K1 lines of the first sequence to the
+     *  first K2 lines of the second.  This is the forward half of Myers'
+     *  algorithm: after D edits, V[k] holds the furthest position reached
+     *  on diagonal k, so time is O((K1 + K2) D) and space O(K1 + K2). */
+    private int editDistance(int k1, int k2) {
+        int max = k1 + k2;
+        int off = max + 1;
+        int[] v = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < k1 && y < k2 && equal(x, y)) {
+                    x += 1;
+                    y += 1;
+                }
+                v[off + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
+                }
+            }
+        }
+        return max;
     }
 
+    /** Append the runs of a longest common subsequence of lines
+     *  [A0 .. A1 - 1] of the first sequence and [B0 .. B1 - 1] of the
+     *  second to _runs, in order.  Common prefixes and suffixes are
+     *  matched directly; what remains is split at a middle snake and
+     *  each half is solved the same way (Myers' linear-space
+     *  refinement). */
+    private void common(int a0, int a1, int b0, int b1) {
+        int prefix = 0;
+        while (a0 + prefix < a1 && b0 + prefix < b1
+               && equal(a0 + prefix, b0 + prefix)) {
+            prefix += 1;
+        }
+        addRun(a0, b0, prefix);
+        a0 += prefix;
+        b0 += prefix;
+        int suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0
+               && equal(a1 - suffix - 1, b1 - suffix - 1)) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            common(a0, snake[0], b0, snake[1]);
+            addRun(snake[0], snake[1], snake[2] - snake[0]);
+            common(snake[2], a1, snake[3], b1);
+        }
+        addRun(a1, b1, suffix);
+    }
+
+    /** Return the middle snake of a shortest edit from lines
+     *  [A0 .. A1 - 1] of the first sequence to [B0 .. B1 - 1] of the
+     *  second, as {x0, y0, x1, y1}: a run of equal lines from (x0, y0) to
+     *  (x1, y1) lying on some shortest edit path, found by running the
+     *  forward and reverse searches until their frontiers meet.  The
+     *  ranges must be non-empty and differ in their first and last
+     *  lines. */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && equal(a0 + x, b0 + y)) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1
+                    && x + vb[off + c] >= n) {
+                    return new int[] { a0 + x0, b0 + y0, a0 + x, b0 + y };
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x;
+                if (c == -d || (c != d && vb[off + c - 1] < vb[off + c + 1])) {
+                    x = vb[off + c + 1];
+                } else {
+                    x = vb[off + c - 1] + 1;
+                }
+                int y = x - c;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && equal(a1 - x - 1, b1 - y - 1)) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d && x + vf[off + k] >= n) {
+                    return new int[] { a1 - x, b1 - y, a1 - x0, b1 - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Append the runs of a common subsequence of lines [A0 .. A1 - 1] of
+     *  the first sequence and [B0 .. B1 - 1] of the second to _runs, in
+     *  order, by histogram diff.  Each range is split at the longest run
+     *  of equal lines around its least frequent common line, and the
+     *  pieces before and after are split the same way.  Ranges whose
+     *  common lines are all too frequent to anchor on fall back to Myers.
+     *  Pending work is kept on a stack rather than in recursive calls,
+     *  since anchoring near one end of a range can split it very
+     *  unevenly. */
+    private void histogram(int a0, int a1, int b0, int b1) {
+        int[] count = new int[_numIds];
+        int[] head = new int[_numIds];
+        int[] next = new int[_ids1.length];
+        int[] work = new int[5 * 16];
+        int top = 0;
+        work[top++] = RANGE;
+        work[top++] = a0;
+        work[top++] = a1;
+        work[top++] = b0;
+        work[top++] = b1;
+        while (top > 0) {
+            top -= 5;
+            int i0 = work[top + 1], i1 = work[top + 2],
+                j0 = work[top + 3], j1 = work[top + 4];
+            if (work[top] == RUN) {
+                addRun(i0, i1, j0);
+                continue;
+            }
+            while (i0 < i1 && j0 < j1 && equal(i0, j0)) {
+                addRun(i0, j0, 1);
+                i0 += 1;
+                j0 += 1;
+            }
+            int suffix = 0;
+            while (i1 - suffix > i0 && j1 - suffix > j0
+                   && equal(i1 - suffix - 1, j1 - suffix - 1)) {
+                suffix += 1;
+            }
+            i1 -= suffix;
+            j1 -= suffix;
+            if (top + 15 > work.length) {
+                work = Arrays.copyOf(work, 2 * work.length);
+            }
+            if (suffix > 0) {
+                work[top++] = RUN;
+                work[top++] = i1;
+                work[top++] = j1;
+                work[top++] = suffix;
+                work[top++] = 0;
+            }
+            if (i0 == i1 || j0 == j1) {
+                continue;
+            }
+            for (int i = i1 - 1; i >= i0; i -= 1) {
+                int id = _ids1[i];
+                next[i] = count[id] == 0 ? -1 : head[id];
+                head[id] = i;
+                count[id] += 1;
+            }
+            int bestStart1 = 0, bestStart2 = 0, bestLen = 0;
+            int bestCount = MAX_CHAIN + 1;
+            boolean tooFrequent = false;
+            for (int j = j0; j < j1;) {
+                int c = count[_ids2[j]];
+                int nextJ = j + 1;
+                if (c > MAX_CHAIN) {
+                    tooFrequent = true;
+                } else if (c > 0 && c <= bestCount) {
+                    for (int i = head[_ids2[j]]; i != -1; i = next[i]) {
+                        int s1 = i, s2 = j, e1 = i + 1, e2 = j + 1;
+                        int low = c;
+                        while (s1 > i0 && s2 > j0 && equal(s1 - 1, s2 - 1)) {
+                            s1 -= 1;
+                            s2 -= 1;
+                            low = Math.min(low, count[_ids1[s1]]);
+                        }
+                        while (e1 < i1 && e2 < j1 && equal(e1, e2)) {
+                            low = Math.min(low, count[_ids1[e1]]);
+                            e1 += 1;
+                            e2 += 1;
+                        }
+                        if (low < bestCount
+                            || (low == bestCount && e1 - s1 > bestLen)) {
+                            bestStart1 = s1;
+                            bestStart2 = s2;
+                            bestLen = e1 - s1;
+                            bestCount = low;
+                        }
+                        nextJ = Math.max(nextJ, e2);
+                    }
+                }
+                j = nextJ;
+            }
+            for (int i = i0; i < i1; i += 1) {
+                count[_ids1[i]] = 0;
+            }
+            if (bestLen > 0) {
+                work[top++] = RANGE;
+                work[top++] = bestStart1 + bestLen;
+                work[top++] = i1;
+                work[top++] = bestStart2 + bestLen;
+                work[top++] = j1;
+                work[top++] = RUN;
+                work[top++] = bestStart1;
+                work[top++] = bestStart2;
+                work[top++] = bestLen;
+                work[top++] = 0;
+                work[top++] = RANGE;
+                work[top++] = i0;
+                work[top++] = bestStart1;
+                work[top++] = j0;
+                work[top++] = bestStart2;
+            } else if (tooFrequent) {
+                common(i0, i1, j0, j1);
+            }
+        }
+    }
+
+    /** Append the common run of length LEN starting at line I1 of the
+     *  first sequence and I2 of the second to _runs, joining it to the
+     *  previous run if they are adjacent. */
+    private void addRun(int i1, int i2, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (_nruns > 0 && _runs[_nruns - 3] + _runs[_nruns - 1] == i1
+            && _runs[_nruns - 2] + _runs[_nruns - 1] == i2) {
+            _runs[_nruns - 1] += len;
+            return;
+        }
+        if (_nruns == _runs.length) {
+            _runs = Arrays.copyOf(_runs, 2 * _runs.length);
+        }
+        _runs[_nruns] = i1;
+        _runs[_nruns + 1] = i2;
+        _runs[_nruns + 2] = len;
+        _nruns += 3;
+    }
+
+    /** Return an array containing the int values of the items in LIST. */
+    private int[] toIntArr(Collection<Integer> list) {
+        int[] result = new int[list.size()];
+        int i;
+        i = 0;
+        for (int x : list) {
+            result[i] = x;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Kinds of pending work in histogram: a range to compare, or a
+     *  common run to append once the ranges before it are done. */
+    private static final int RANGE = 0, RUN = 1;
+
+    /** Histogram diff does not anchor on a line occurring more often than
+     *  this in its range of the first sequence. */
+    private static final int MAX_CHAIN = 64;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The ids of the lines of the sequences being compared.  Equal lines
+     *  have equal ids, from 0 to _numIds - 1, so comparisons look only at
+     *  ints. */
+    private int[] _ids1, _ids2;
+    /** Number of distinct lines in the sequences being compared. */
+    private int _numIds;
+
+    /** How the common subsequence is found. */
+    private Algorithm _algorithm = Algorithm.MYERS;
+
+    /** The longest common subsequence of the current sequences, as
+     *  returned by commonSubsequence, or null if not calculated. */
+    private int[] _common;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** Runs of the common subsequence being built: _nruns values of
+     *  start1, start2, length triples. */
+    private int[] _runs;
+    /** Number of values used in _runs. */
+    private int _nruns;
 
 }
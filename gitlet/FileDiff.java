@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+
+/** The differences between two versions of one file: the edits in the
+ *  unified format of diff -u, and the numbers of lines inserted and
+ *  deleted for diff --stat.
+ *  @author Yusuf Quddus
+ */
+class FileDiff {
+
+    /**
+     * Compare the contents BEFORE and AFTER of the file at PATH.
+     *
+     * @param path name of the file.
+     * @param before its old contents, or null if it did not exist.
+     * @param after its new contents, or null if it does not exist.
+     * @param algorithm how Diff finds the common lines.
+     */
+    FileDiff(String path, String before, String after,
+             Diff.Algorithm algorithm) {
+        _path = path;
+        _before = before;
+        _after = after;
+        _diff = new Diff();
+        _diff.setAlgorithm(algorithm);
+        _diff.setSequences(bytes(before), bytes(after));
+        _edits = _diff.diffs();
+        for (int k = 0; k < _edits.length; k += 4) {
+            _deletions += _edits[k + 1];
+            _insertions += _edits[k + 3];
+        }
+    }
+
+    /**
+     * @return the number of lines added
+     */
+    int insertions() {
+        return _insertions;
+    }
+
+    /**
+     * @return the number of lines removed
+     */
+    int deletions() {
+        return _deletions;
+    }
+
+    /**
+     * Return the changes as a unified diff: a header naming the two
+     * versions, then hunks of edits surrounded by up to CONTEXT
+     * unchanged lines, hunks closer together than that being joined.
+     *
+     * @return the diff text, ending in a newline
+     */
+    String unified() {
+        StringBuilder out = new StringBuilder();
+        out.append("diff --git a/").append(_path).append(" b/")
+            .append(_path).append('\n');
+        if (_before == null) {
+            out.append("new file\n");
+        } else if (_after == null) {
+            out.append("deleted file\n");
+        }
+        out.append("--- ").append(_before == null ? "/dev/null"
+                                   : "a/" + _path).append('\n');
+        out.append("+++ ").append(_after == null ? "/dev/null"
+                                   : "b/" + _path).append('\n');
+        int n1 = _diff.sequence1().size();
+        for (int k = 0; k < _edits.length;) {
+            int last = k;
+            while (last + 4 < _edits.length
+                   && _edits[last + 4] - _edits[last] - _edits[last + 1]
+                      <= 2 * CONTEXT) {
+                last += 4;
+            }
+            int start1 = Math.max(0, _edits[k] - CONTEXT);
+            int start2 = _edits[k + 2] - (_edits[k] - start1);
+            int editEnd1 = _edits[last] + _edits[last + 1];
+            int end1 = Math.min(n1, editEnd1 + CONTEXT);
+            int end2 = _edits[last + 2] + _edits[last + 3]
+                + (end1 - editEnd1);
+            out.append("@@ -").append(range(start1, end1 - start1))
+                .append(" +").append(range(start2, end2 - start2))
+                .append(" @@\n");
+            int p1 = start1;
+            for (int e = k; e <= last; e += 4) {
+                for (; p1 < _edits[e]; p1 += 1) {
+                    out.append(' ').append(line1(p1)).append('\n');
+                }
+                for (int i = 0; i < _edits[e + 1]; i += 1) {
+                    out.append('-').append(line1(_edits[e] + i))
+                        .append('\n');
+                }
+                for (int i = 0; i < _edits[e + 3]; i += 1) {
+                    out.append('+').append(line2(_edits[e + 2] + i))
+                        .append('\n');
+                }
+                p1 = _edits[e] + _edits[e + 1];
+            }
+            for (; p1 < end1; p1 += 1) {
+                out.append(' ').append(line1(p1)).append('\n');
+            }
+            k = last + 4;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Return the line of diff --stat for this file: its name padded to
+     * WIDTH, the number of lines changed, and a bar of '+' and '-' with
+     * one character per line, scaled down to STAT_BAR characters for
+     * larger changes.
+     *
+     * @param width width of the name column.
+     * @return the line, ending in a newline
+     */
+    String stat(int width) {
+        int total = _insertions + _deletions;
+        int plus = _insertions, minus = _deletions;
+        if (total > STAT_BAR) {
+            plus = (int) Math.round((double) _insertions * STAT_BAR / total);
+            plus = Math.max(plus, _insertions > 0 ? 1 : 0);
+            minus = Math.max(STAT_BAR - plus, _deletions > 0 ? 1 : 0);
+        }
+        return String.format(" %-" + width + "s | %d %s%s%n", _path, total,
+                             "+".repeat(plus), "-".repeat(minus));
+    }
+
+    /** Return the UTF-8 bytes of CONTENTS, which may be null. */
+    private static byte[] bytes(String contents) {
+        return contents == null ? new byte[0]
+            : contents.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return line K of the old version as diff -u prints it: followed
+     *  by a marker if it is the last line and has no newline. */
+    private String line1(int k) {
+        return line(_diff.get1(k), k, _diff.sequence1().size(), _before);
+    }
+
+    /** Return line K of the new version as diff -u prints it. */
+    private String line2(int k) {
+        return line(_diff.get2(k), k, _diff.sequence2().size(), _after);
+    }
+
+    /** Return LINE, line K of the SIZE lines of CONTENTS, followed by a
+     *  marker if it is the last and CONTENTS does not end in a newline. */
+    private static String line(String line, int k, int size,
+                               String contents) {
+        if (k == size - 1 && !contents.endsWith("\n")) {
+            return line + NO_NEWLINE;
+        }
+        return line;
+    }
+
+    /** Return the unified-diff form of the range of LENGTH lines starting
+     *  at 0-based line START. */
+    private static String range(int start, int length) {
+        if (length == 0) {
+            return start + ",0";
+        } else if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (start + 1) + "," + length;
+    }
+
+    /** Unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Widest bar of a diff --stat line. */
+    static final int STAT_BAR = 40;
+
+    /** Follows a last line that has no newline. */
+    private static final String NO_NEWLINE =
+        "\n\\ No newline at end of file";
+
+    /** Name of the file. */
+    private final String _path;
+
+    /** Old and new contents, null when absent. */
+    private final String _before, _after;
+
+    /** The comparison of the two versions' lines. */
+    private final Diff _diff;
+
+    /** Edits from the old version to the new, as returned by
+     *  Diff.diffs. */
+    private final int[] _edits;
+
+    /** Lines added and removed. */
+    private int _insertions, _deletions;
+}
@@ -1,16 +1,49 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Queue;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 
 public class Gitlet {
@@ -24,63 +57,90 @@ public class Gitlet {
      */
     public void init() throws IOException {
         setupPersistance();
+        new MetadataLog(METADATA_LOG).rebuild(new CommitScanner(COMMITS));
         Commit initialCommit = new Commit("initial commit", "", null, true);
-        String initialCommitHash = Utils.sha1(Utils.serialize(initialCommit));
-        File initialCommitsFile = Utils.join(COMMITS, initialCommitHash);
-        initialCommitsFile.createNewFile();
-        Utils.writeObject(initialCommitsFile, initialCommit);
+        String initialCommitHash = writeCommit(initialCommit);
         Utils.writeContents(head, MASTER.getPath());
-        Utils.writeContents(MASTER, initialCommitHash);
+        writeRef(MASTER, initialCommitHash);
     }
 
 
     /**
-     * Add FILENAME to add staging area. Remove it from remove staging area if
-     * it exists there. Do not add if the file is the same in the current
-     * commit.
+     * Add the files named by PATHS to add staging area. Each path is a
+     * file name, a glob pattern matched against the working directory,
+     * or -A, which stages every new and modified file and stages the
+     * removal of tracked files that were deleted. Files are read and
+     * hashed by a pool of worker threads while the staging area is
+     * updated in path order, through maps from file name to staging
+     * key, and the staging area is written once at the end. For each
+     * file: remove it from remove staging area if it
+     * exists there, and do not add it if the file is the same in the
+     * current commit.
      *
-     * @param fileName name of the file to be staged.
+     * @param paths file names, glob patterns or -A.
      */
-    public void add(String fileName) {
-        File addFile = Utils.join(CWD, fileName);
-
-        if (!addFile.exists()) {
-            Main.exitWithError("File does not exist.");
-        }
-
-        readStaging();
-
-        Blob addBlob = new Blob(fileName, Utils.readContentsAsString(addFile));
-        String blobHash = Utils.sha1(Utils.serialize(addBlob));
-
-        Set<Map.Entry<String, Blob>> rmStagingEntries = rmStagingMap.entrySet();
-        if (!rmStagingMap.isEmpty()) {
-            for (Map.Entry<String, Blob> entry : rmStagingEntries) {
-                if (fileName.equals(entry.getValue().getName())) {
-                    rmStagingMap.remove(entry.getKey());
+    public void add(String... paths) {
+        SparseCheckout cone = sparseCone();
+        TreeMap<String, Blob> lastCommitBlobs =
+                getLastCommit().getCommittedFiles();
+        HashMap<String, String> tracked = idsByName(lastCommitBlobs);
+        TreeSet<String> fileNames = new TreeSet<>();
+        TreeSet<String> deleted = new TreeSet<>();
+        for (String path : paths) {
+            if (path.equals("-A")) {
+                fileNames.addAll(workingFiles(cone, "**"));
+                for (String name : tracked.keySet()) {
+                    if (cone.contains(name)
+                            && !Utils.join(CWD, name).exists()) {
+                        deleted.add(name);
+                    }
                 }
+            } else if (isGlob(path)) {
+                fileNames.addAll(workingFiles(cone, path));
+            } else if (!Utils.join(CWD, path).isFile()) {
+                Main.exitWithError("File does not exist.");
+            } else if (!cone.contains(path)) {
+                Main.exitWithError("File is outside the sparse-checkout"
+                        + " cone.");
+            } else {
+                fileNames.add(path);
             }
         }
 
-        Set<Map.Entry<String, Blob>> stagingEntries = addStagingMap.entrySet();
-        if (!addStagingMap.isEmpty()) {
-            for (Map.Entry<String, Blob> entry : stagingEntries) {
-                if (fileName.equals(entry.getValue().getName())) {
-                    addStagingMap.remove(entry.getKey());
-                    addStagingMap.put(blobHash, addBlob);
+        readStaging();
+        HashMap<String, String> staged = idsByName(addStagingMap);
+        HashMap<String, String> removed = idsByName(rmStagingMap);
+        ExecutorService workers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            ArrayList<Future<Map.Entry<String, Blob>>> hashed =
+                    new ArrayList<>();
+            for (String fileName : fileNames) {
+                hashed.add(workers.submit(() -> {
+                    Blob blob = new Blob(fileName, Utils.readContentsAsString(
+                            Utils.join(CWD, fileName)));
+                    return Map.entry(Utils.sha1(Utils.serialize(blob)), blob);
+                }));
+            }
+            for (Future<Map.Entry<String, Blob>> result : hashed) {
+                Map.Entry<String, Blob> entry = result.get();
+                String fileName = entry.getValue().getName();
+                unstage(fileName, staged, removed);
+                if (!lastCommitBlobs.containsKey(entry.getKey())) {
+                    addStagingMap.put(entry.getKey(), entry.getValue());
+                    staged.put(fileName, entry.getKey());
                 }
             }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw Utils.error("Could not read file: %s", excp.getMessage());
+        } finally {
+            workers.shutdown();
         }
-
-        TreeMap<String, Blob> lastCommitBlobs =
-                getLastCommit().getCommittedFiles();
-        if (lastCommitBlobs.isEmpty()
-                || !lastCommitBlobs.containsKey(blobHash)) {
-            addStagingMap.put(blobHash, addBlob);
-        } else {
-            if (addStagingMap.containsKey(blobHash)) {
-                addStagingMap.remove(blobHash);
-            }
+        for (String fileName : deleted) {
+            unstage(fileName, staged, removed);
+            String id = tracked.get(fileName);
+            rmStagingMap.put(id, lastCommitBlobs.get(id));
+            removed.put(fileName, id);
         }
 
         writeStaging();
@@ -214,32 +274,135 @@ public class Gitlet {
      * following the first parent commit links, ignoring any second
      * parents found in merge commits.
      *
+     * With --all, or with branches or commits to start from, every
+     * parent is followed from all of them at once. A priority queue of
+     * commit-graph positions keyed by commit time yields the newest
+     * commit not yet shown, so the history of several branches comes
+     * out interleaved by date, each commit once, without listing the
+     * commits directory.
+     *
      * Format of log:
      *      ===
      *      commit 0c69f7be8497337c9736aa80b47828bb5306c007
      *      Date: Wed Dec 31 16:00:00 1969 -0800
      *      initial commit
+     *
+     * OPTIONS may limit the number of commits shown, limit them to a
+     * period, and change how each is printed; see LogOptions. Commit
+     * times come from the commit-graph, so a commit is only read when it
+     * is printed. The walk stops once the limit is reached, once it
+     * passes the start of the period, or once the output can no longer
+     * be written, for example to a closed pipe.
+     *
+     * With a path only the commits that changed it, or any file under
+     * it, relative to their first parent are shown. Each commit's
+     * changed-path Bloom filter is asked first, so snapshots are only
+     * compared for the few commits it cannot rule out. Commits without
+     * a filter get one as they are compared.
+     *
+     * Without a path the commits to print are known in advance from the
+     * commit-graph, so they are read ahead by a Prefetcher while earlier
+     * ones are printed.
+     *
+     * @param options what to show and how.
      */
-    public void log() {
-        Commit commit = getLastCommit();
-        String hash = getLastCommitHash();
-        while (commit.getParent() != "") {
-            printLog(hash);
-            hash = commit.getParent();
-            commit = getCommit(hash);
+    public void log(LogOptions options) {
+        CommitGraph graph = getCommitGraph();
+        ChangedPaths changedPaths = getChangedPaths();
+        String target = options.getPath() == null ? null
+                : Paths.get(options.getPath()).normalize().toString();
+        boolean firstParentOnly = !options.isAll()
+                && options.getRevs().isEmpty();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            int cmp = Long.compare(graph.timestamp(b), graph.timestamp(a));
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        });
+        for (int tip : logTips(options)) {
+            if (!queue.contains(tip)) {
+                queue.add(tip);
+            }
+        }
+        boolean[] queued = new boolean[graph.size()];
+        queue.forEach(pos -> queued[pos] = true);
+
+        Writer out = stdout();
+        int shown = 0;
+        Iterator<String> upcoming = firstParentOnly && options.needsCommit()
+                && target == null ? firstParents(queue.peek())
+                : Collections.emptyIterator();
+        try (Prefetcher<Commit> commits = new Prefetcher<>(upcoming,
+                this::getCommit, PREFETCH_DEPTH)) {
+            while (!queue.isEmpty() && shown < options.getLimit()) {
+                int pos = queue.poll();
+                long time = graph.timestamp(pos);
+                if (time < options.getSince()) {
+                    break;
+                }
+                for (int parent : new int[] {graph.parent(pos),
+                        firstParentOnly ? CommitGraph.NONE
+                                : graph.secondParent(pos)}) {
+                    if (parent != CommitGraph.NONE && !queued[parent]) {
+                        queued[parent] = true;
+                        queue.add(parent);
+                    }
+                }
+                if (time > options.getUntil()
+                        || target != null && !touches(pos, target)) {
+                    continue;
+                }
+                String hash = graph.hash(pos);
+                Commit commit = options.needsCommit() ? commits.get(hash)
+                        : null;
+                out.write(options.format(hash, parentHashes(pos), time,
+                        commit));
+                shown += 1;
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* Nothing reads the output any more. */
         }
-        printLog(hash);
+        changedPaths.flush();
     }
 
 
     /**
      * Like log, except displays information about all commits ever made.
-     * Order of commits is arbitrary.
+     * Order of commits is arbitrary. Commit headers are streamed from the
+     * metadata log, which is first built from every commit if this
+     * repository predates it, so no commit or file is deserialized and
+     * memory use does not grow with the number of commits. With SCAN the
+     * loose commits are read instead, in parallel, in order of id.
+     * Output stops early if it can no longer be written, for example to
+     * a closed pipe.
+     *
+     * @param scan true to read every commit instead of the metadata log.
      */
-    public void globalLog() {
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS);
-        for (String commit : allCommits) {
-            printLog(commit);
+    public void globalLog(boolean scan) {
+        MetadataLog log = new MetadataLog(METADATA_LOG);
+        Writer out = stdout();
+        MetadataLog.Visitor printer = (id, timestamp, message) -> {
+            try {
+                out.write("===\ncommit " + id + "\nDate: " + timestamp
+                        + "\n" + message + "\n\n");
+                return true;
+            } catch (IOException excp) {
+                return false;
+            }
+        };
+        if (scan) {
+            new CommitScanner(COMMITS).scan((id, commit) -> new String[] {
+                id, commit.getTimestamp(), commit.getMessage()
+            }, header -> printer.visit(header[0], header[1], header[2]));
+        } else {
+            if (!log.exists()) {
+                log.rebuild(new CommitScanner(COMMITS));
+            }
+            log.forEach(printer);
+        }
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            /* Nothing reads the output any more. */
         }
     }
 
@@ -258,6 +421,7 @@ public class Gitlet {
      *      === Staged Files ===
      *      wug.txt
      *      wug2.txt
+     *      wug4.txt (renamed from wug0.txt)
      *
      *      === Removed Files ===
      *      goodbye.txt
@@ -273,11 +437,12 @@ public class Gitlet {
         System.out.println("=== Branches ===");
         printBranches();
 
+        TreeMap<String, String> renames = stagedRenames();
         System.out.println("=== Staged Files ===");
-        printStagedForAddition();
+        printStagedForAddition(renames);
 
         System.out.println("=== Removed Files ===");
-        printStagedForRemoval();
+        printStagedForRemoval(renames);
 
         System.out.println("=== Modifications Not Staged For Commit ===");
         printModifiedFiles();
@@ -289,25 +454,51 @@ public class Gitlet {
 
     /**
      * Prints out the ids of all commits that have the given MESSAGE.
+     * With MODE "--contains" the commits whose message contains MESSAGE
+     * are printed instead, and with "--regex" those whose message the
+     * regular expression MESSAGE matches part of. Queries are answered
+     * from the message index rather than by reading every commit, unless
+     * SCAN asks for every loose commit to be read, in parallel.
      *
+     * @param mode null, "--contains" or "--regex".
      * @param message a message associated with a commit.
+     * @param scan true to read every commit instead of the index.
      */
-    public void find(String message) {
-        String[] allCommits = COMMITS.list();
-        boolean messageExists = false;
-
-        for (String commit : allCommits) {
-            File commitFile = Utils.join(COMMITS, commit);
-            Commit commitObj = Utils.readObject(commitFile, Commit.class);
-            if (commitObj.getMessage().equals(message)) {
-                System.out.println(commit);
-                messageExists = true;
+    public void find(String mode, String message, boolean scan) {
+        Pattern pattern = null;
+        if (mode != null && mode.equals("--regex")) {
+            try {
+                pattern = Pattern.compile(message);
+            } catch (PatternSyntaxException excp) {
+                Main.exitWithError("Invalid regular expression.");
             }
         }
+        List<String> found;
+        if (scan) {
+            Pattern regex = pattern;
+            Predicate<String> matches = mode == null ? message::equals
+                    : regex == null ? m -> m.contains(message)
+                    : m -> regex.matcher(m).find();
+            found = new ArrayList<>();
+            new CommitScanner(COMMITS).scan((id, commit) ->
+                    matches.test(commit.getMessage()) ? id : null,
+                    found::add);
+        } else if (mode == null) {
+            found = getMessageIndex().exact(message);
+        } else if (pattern == null) {
+            found = getMessageIndex().contains(message);
+        } else {
+            found = getMessageIndex().matching(pattern);
+        }
 
-        if (!messageExists) {
+        if (found.isEmpty()) {
             Main.exitWithError("Found no commit with that message.");
         }
+        StringBuilder out = new StringBuilder();
+        for (String commit : found) {
+            out.append(commit).append('\n');
+        }
+        System.out.print(out);
     }
 
 
@@ -365,15 +556,46 @@ public class Gitlet {
      */
     public void branch(String branchName) throws IOException {
         File newBranch = Utils.join(BRANCHES, branchName);
-        File headBranch = new File(getHeadBranch());
 
-        if (newBranch.exists()) {
+        if (getRefs().contains(branchName)) {
             Main.exitWithError("A branch with that name already exists.");
         } else {
-            newBranch.createNewFile();
-            Utils.writeContents(newBranch,
-                    Utils.readContentsAsString(headBranch));
+            writeRef(newBranch, getLastCommitHash());
+            if (getRefs().looseCount() > LOOSE_REFS_LIMIT) {
+                getRefs().pack();
+            }
+        }
+    }
+
+
+    /**
+     * Lists every branch in lexical order with the abbreviated id of its
+     * commit and how many commits it is ahead of and behind the upstream
+     * branch, marking the current branch with a '*'. No commit is read;
+     * the counts come from one walk of the commit-graph.
+     */
+    public void branchVerbose() {
+        String headBranchName = new File(getHeadBranch()).getName();
+        TreeMap<String, String> branches = getRefs().all();
+        String[] names = branches.keySet().toArray(new String[0]);
+        TreeMap<String, int[]> divergence = divergence(branches);
+        int width = 0;
+        for (String name : names) {
+            width = Math.max(width, name.length());
+        }
+        StringBuilder out = new StringBuilder();
+        for (String name : names) {
+            String hash = branches.get(name);
+            out.append(name.equals(headBranchName) ? "* " : "  ")
+                .append(String.format("%-" + width + "s ", name))
+                .append(hash, 0, Math.min(hash.length(), BRANCH_ABBREV));
+            String counts = aheadBehind(divergence.get(name));
+            if (!counts.isEmpty()) {
+                out.append(' ').append(counts);
+            }
+            out.append('\n');
         }
+        System.out.print(out);
     }
 
 
@@ -388,12 +610,24 @@ public class Gitlet {
         File branch = Utils.join(BRANCHES, branchName);
         String headCommit = getHeadBranch();
 
-        if (!branch.exists()) {
+        if (!getRefs().contains(branchName)) {
             Main.exitWithError("A branch with that name does not exist.");
         } else if (headCommit.equals(branch.getAbsolutePath())) {
             Main.exitWithError("Cannot remove the current branch.");
-        } else {
-            branch.delete();
+        }
+        File lock = lockWorktrees();
+        boolean free;
+        try {
+            free = !checkedOutElsewhere(branch);
+            if (free) {
+                getRefs().remove(branchName);
+            }
+        } finally {
+            lock.delete();
+        }
+        if (!free) {
+            Main.exitWithError("That branch is checked out in another "
+                    + "worktree.");
         }
     }
 
@@ -416,37 +650,15 @@ public class Gitlet {
 
         TreeMap<String, Blob> filesAtCommit =
                 getAbbrevCommit(commitID).getCommittedFiles();
-        Set<Map.Entry<String, Blob>> commitFileEntries =
-                filesAtCommit.entrySet();
-        ArrayList<String> untrackedFiles = getUntrackedFiles();
-
-        for (Map.Entry<String, Blob> cFile : commitFileEntries) {
-            for (String untrackedFile : untrackedFiles) {
-                if (untrackedFile.equals(cFile.getValue().getName())) {
-                    Main.exitWithError("There is an untracked file in the way;"
-                            + " delete it, "
-                            + "or add and commit it first.");
-                }
-            }
-        }
-
-        ArrayList<String> trackedFiles = getTrackedFiles();
-        for (String name : trackedFiles) {
-            File aWorkingFile = Utils.join(CWD, name);
-            aWorkingFile.delete();
-        }
-
-        for (Map.Entry<String, Blob> file : commitFileEntries) {
-            File aFile = Utils.join(CWD, file.getValue().getName());
-            aFile.createNewFile();
-            Utils.writeContents(aFile, file.getValue().getFileContents());
-        }
+        checkUntrackedInTheWay(filesAtCommit);
+        updateWorkingTree(getLastCommit().getCommittedFiles(),
+                filesAtCommit);
 
         clearStaging();
         writeStaging();
 
         File currentBranch = new File(getHeadBranch());
-        Utils.writeContents(currentBranch, commitID);
+        writeRef(currentBranch, commitID);
     }
 
 
@@ -487,253 +699,1082 @@ public class Gitlet {
      */
     public void merge(String givenBranch) throws IOException {
         File givenBranchFile = Utils.join(BRANCHES, givenBranch);
-        TreeMap<String, String> allFiles = new TreeMap<>();
-        TreeMap<String, Blob> result = new TreeMap<>();
-        Commit splitCommit = getSplitPoint(getLastCommit(), givenBranchFile);
-        TreeMap<String, Blob> current = getLastCommit().getCommittedFiles();
-        TreeMap<String, Blob> given =
-                getCommit(Utils.readContentsAsString(givenBranchFile))
-                        .getCommittedFiles();
-        TreeMap<String, Blob> split = splitCommit.getCommittedFiles();
-        Set<Map.Entry<String, Blob>> currentEntries = current.entrySet();
-        Set<Map.Entry<String, Blob>> givenEntries = given.entrySet();
-        Set<Map.Entry<String, Blob>> splitEntries = split.entrySet();
-        Set<Map.Entry<String, String>> allEntries = allFiles.entrySet();
-        handleMergeErrorCases(allEntries, givenBranch, givenBranchFile,
-                splitCommit);
-        combineFiles(allFiles, currentEntries, givenEntries, splitEntries);
-        boolean givenModied, currentModified, sameModification,
-                inCurrent, inGiven, inSplit, conflict;
-        conflict = false;
-        for (Map.Entry<String, String> file : allEntries) {
-            String fileName = file.getKey();
-            givenModied = currentModified = sameModification = inCurrent
-                    = inSplit = inGiven = false;
-            Blob[] cgsBlob = new Blob[3];
-            String[] cgsHash = new String[] {"", "", ""};
-            for (Map.Entry<String, Blob> entry : splitEntries) {
-                if (fileName.equals(entry.getValue().getName())) {
-                    inSplit = true;
-                    cgsHash[2] = entry.getKey();
-                    cgsBlob[2] = entry.getValue();
-                }
-            }
-            for (Map.Entry<String, Blob> entry : currentEntries) {
-                if (fileName.equals(entry.getValue().getName())) {
-                    inCurrent = true;
-                    cgsHash[0] = entry.getKey();
-                    cgsBlob[0] = entry.getValue();
-                }
-            }
-            for (Map.Entry<String, Blob> entry : givenEntries) {
-                if (fileName.equals(entry.getValue().getName())) {
-                    inGiven = true;
-                    cgsHash[1] = entry.getKey();
-                    cgsBlob[1] = entry.getValue();
-                }
-            }
-            if (!cgsHash[1].equals(cgsHash[2])) {
-                givenModied = true;
-            }
-            if (!cgsHash[0].equals(cgsHash[2])) {
-                currentModified = true;
-            }
-            conflict = handleMergingLogic(result, inCurrent, inGiven,
-                    inSplit, givenModied, currentModified,
-                    cgsHash, cgsBlob);
+        readStaging();
+        if (!addStagingMap.isEmpty() || !rmStagingMap.isEmpty()) {
+            Main.exitWithError("You have uncommitted changes.");
+        }
+        if (!getRefs().contains(givenBranch)) {
+            Main.exitWithError("A branch with that name does not exist.");
+        }
+        if (givenBranchFile.getAbsolutePath().equals(getHeadBranch())) {
+            Main.exitWithError("Cannot merge a branch with itself.");
+        }
+        String currentHash = getLastCommitHash();
+        String givenHash = getRefs().get(givenBranch);
+        int currentPos = graphPosition(currentHash);
+        int givenPos = graphPosition(givenHash);
+        Reachability reachability = getReachability();
+        if (reachability.isAncestor(givenPos, currentPos)) {
+            Main.exitWithError("Given branch is an ancestor of "
+                    + "the current branch.");
+        } else if (reachability.isAncestor(currentPos, givenPos)) {
+            moveHead(currentHash, givenHash);
+            Main.exitWithError("Current branch fast-forwarded.");
+        }
+        int[] splitPoints = getCommitGraph().mergeBases(currentPos, givenPos);
+        MergeResult result = mergeTrees(splitPointFiles(splitPoints),
+                getCommit(currentHash).getCommittedFiles(),
+                getCommit(givenHash).getCommittedFiles());
+        if (result.hasConflicts()) {
+            System.out.println("Encountered a merge conflict.");
         }
-        commitMerge(result, givenBranch, allFiles);
+        commitMerge(result.getFiles(), givenBranch);
     }
 
 
-
-    /* Helper functions below */
+    /**
+     * Merges the snapshots of three commits entirely in memory. The
+     * files of CURRENTID and GIVENID are combined relative to their
+     * split point SPLITID following the rules of merge. Conflicted
+     * files are given conflict markers and reported in the result.
+     * Neither the working directory nor the staging area is touched.
+     *
+     * @param splitID hash of the common ancestor commit.
+     * @param currentID hash of the current commit.
+     * @param givenID hash of the commit merged in.
+     * @return merged files and the names of files in conflict.
+     */
+    public MergeResult mergeTrees(String splitID, String currentID,
+                                  String givenID) {
+        return mergeTrees(getCommit(splitID).getCommittedFiles(),
+                getCommit(currentID).getCommittedFiles(),
+                getCommit(givenID).getCommittedFiles());
+    }
 
 
     /**
-     * Sets up initial file structure.
+     * Apply the changes introduced by the commit COMMITID on top of the
+     * current commit, making a new commit with the same message. The
+     * working directory is updated once the new commit is made.
      *
+     * @param commitID possibly abbreviated id of the commit to replay.
      * @throws IOException
      */
-    private void setupPersistance() throws IOException {
-        GIT.mkdir();
-        BRANCHES.mkdir();
-        COMMITS.mkdir();
-        STAGING.mkdir();
-        addStagingFile.createNewFile();
-        rmStagingFile.createNewFile();
-        head.createNewFile();
-        MASTER.createNewFile();
-        writeStaging();
+    public void cherryPick(String commitID) throws IOException {
+        readStaging();
+        if (!addStagingMap.isEmpty() || !rmStagingMap.isEmpty()) {
+            Main.exitWithError("You have uncommitted changes.");
+        }
+        String pickHash = resolveCommitID(commitID);
+        if (getCommit(pickHash).getParent().equals("")) {
+            Main.exitWithError("Cannot cherry-pick the initial commit.");
+        }
+        String headHash = getLastCommitHash();
+        String newHead = replayCommit(pickHash, headHash);
+        if (newHead == null) {
+            Main.exitWithError("No changes added to the commit.");
+        }
+        moveHead(headHash, newHead);
     }
 
 
     /**
-     * Saves commit to a commit file.
+     * Replays the commits of the current branch that are not in the
+     * given branch on top of the given branch's head, following first
+     * parents and dropping merge commits. The current branch is moved
+     * to the last replayed commit and the working directory is updated
+     * once at the end. As with merge, conflicted files are committed
+     * with conflict markers.
      *
-     * @param commit commit object to be saved to file.
+     * @param branchName branch to replay the current branch onto.
      * @throws IOException
      */
-    private void persistCommit(Commit commit) throws IOException {
-        String commitHash = Utils.sha1(Utils.serialize(commit));
-        File commitFile = Utils.join(COMMITS, commitHash);
+    public void rebase(String branchName) throws IOException {
+        File branchFile = Utils.join(BRANCHES, branchName);
+        readStaging();
+        if (!addStagingMap.isEmpty() || !rmStagingMap.isEmpty()) {
+            Main.exitWithError("You have uncommitted changes.");
+        }
+        if (!getRefs().contains(branchName)) {
+            Main.exitWithError("A branch with that name does not exist.");
+        }
+        if (branchFile.getAbsolutePath().equals(getHeadBranch())) {
+            Main.exitWithError("Cannot rebase a branch onto itself.");
+        }
+        String headHash = getLastCommitHash();
+        String ontoHash = getRefs().get(branchName);
+        CommitGraph graph = getCommitGraph();
+        int headPos = graphPosition(headHash);
+        int ontoPos = graphPosition(ontoHash);
+        Reachability reachability = getReachability();
+        if (reachability.isAncestor(ontoPos, headPos)) {
+            Main.exitWithError("Current branch is up to date.");
+        } else if (reachability.isAncestor(headPos, ontoPos)) {
+            moveHead(headHash, ontoHash);
+            Main.exitWithError("Current branch fast-forwarded.");
+        }
 
-        if (!commitFile.exists()) {
-            commitFile.createNewFile();
-            Utils.writeObject(commitFile, commit);
-            Utils.writeContents(new File(getHeadBranch()), commitHash);
-        } else {
-            Main.exitWithError("Commit already exists.");
+        Bitmap ontoAncestors = reachability.reachable(ontoPos);
+        LinkedList<String> toReplay = new LinkedList<>();
+        for (int pos = headPos; !ontoAncestors.contains(pos);
+             pos = graph.parent(pos)) {
+            if (graph.secondParent(pos) == CommitGraph.NONE) {
+                toReplay.addFirst(graph.hash(pos));
+            }
         }
+
+        String tip = ontoHash;
+        for (String pick : toReplay) {
+            String next = replayCommit(pick, tip);
+            if (next != null) {
+                tip = next;
+            }
+        }
+        moveHead(headHash, tip);
     }
 
 
+
     /**
-     * @return directory address of HEAD branch
+     * Manages the sparse-checkout cone, the part of each commit that is
+     * written to the working directory:
+     *      set [pattern]...   limit the working directory to files
+     *                         matching the glob patterns
+     *      list               print the current patterns
+     *      disable            check out every file again
+     * Tracked files entering the cone are written, and unmodified
+     * tracked files leaving it are deleted.
+     *
+     * @param args subcommand followed by its operands.
+     * @throws IOException
      */
-    private String getHeadBranch() {
-        return Utils.readContentsAsString(head);
+    public void sparseCheckout(String... args) throws IOException {
+        SparseCheckout before = sparseCone();
+        SparseCheckout after = sparseCone();
+        switch (args[0]) {
+        case "list":
+            for (String pattern : before.getPatterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        case "set":
+            after.set(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        default:
+            after.disable();
+            break;
+        }
+        for (Blob blob : getLastCommit().getCommittedFiles().values()) {
+            String name = blob.getName();
+            File aFile = Utils.join(CWD, name);
+            if (after.contains(name) && !before.contains(name)) {
+                writeWorkingFile(blob);
+            } else if (!after.contains(name) && before.contains(name)
+                    && aFile.isFile() && Utils.readContentsAsString(aFile)
+                    .equals(blob.getFileContents())) {
+                aFile.delete();
+            }
+        }
     }
 
 
+
     /**
-     * @return commit object of current commit.
+     * Creates a second working directory DIR that shares this
+     * repository's commits and branches but has its own HEAD and
+     * staging area, and checks out BRANCHNAME there. A branch can only
+     * be checked out in one worktree at a time; the check and the
+     * registration of the new worktree hold the worktrees lock.
+     *
+     * @param dir path of the new working directory.
+     * @param branchName branch to check out in it.
+     * @throws IOException
      */
-    private Commit getLastCommit() {
-        File lastCommitFile = Utils.join(COMMITS, getLastCommitHash());
-        return Utils.readObject(lastCommitFile, Commit.class);
+    public void worktreeAdd(String dir, String branchName) throws IOException {
+        File branchFile = Utils.join(BRANCHES, branchName);
+        File root = new File(dir).isAbsolute() ? new File(dir)
+                : Utils.join(CWD, dir);
+        String[] existing = root.list();
+        if (!getRefs().contains(branchName)) {
+            Main.exitWithError("A branch with that name does not exist.");
+        } else if (existing != null && existing.length > 0) {
+            Main.exitWithError("A non-empty directory already exists"
+                    + " at that path.");
+        }
+
+        Commit commit = getCommit(getRefs().get(branchName));
+        File worktreeGit = Utils.join(root, ".gitlet");
+        File lock = lockWorktrees();
+        boolean free;
+        try {
+            free = !branchFile.getAbsolutePath().equals(getHeadBranch())
+                    && !checkedOutElsewhere(branchFile);
+            if (free) {
+                File worktreeStaging = Utils.join(worktreeGit, "staging");
+                worktreeStaging.mkdirs();
+                Utils.writeObject(Utils.join(worktreeStaging, "add"),
+                        new TreeMap<>());
+                Utils.writeObject(Utils.join(worktreeStaging, "rm"),
+                        new TreeMap<>());
+                Utils.writeContents(Utils.join(worktreeGit, "HEAD"),
+                        branchFile.getAbsolutePath());
+                Utils.writeContents(Utils.join(worktreeGit, "commondir"),
+                        COMMON.getAbsolutePath());
+
+                WORKTREES.mkdir();
+                String name = root.getName();
+                for (int i = 1; Utils.join(WORKTREES, name).exists();
+                     i += 1) {
+                    name = root.getName() + i;
+                }
+                Utils.writeContents(Utils.join(WORKTREES, name),
+                        worktreeGit.getAbsolutePath());
+            }
+        } finally {
+            lock.delete();
+        }
+        if (!free) {
+            Main.exitWithError("That branch is checked out in another "
+                    + "worktree.");
+        }
+
+        for (Blob blob : commit.getCommittedFiles().values()) {
+            File aFile = Utils.join(root, blob.getName());
+            aFile.getParentFile().mkdirs();
+            Utils.writeContents(aFile, blob.getFileContents());
+        }
     }
 
 
     /**
-     * @return current commit hash
+     * Lists every working directory of this repository and the branch
+     * checked out in each, starting with the main one.
      */
-    private String getLastCommitHash() {
-        return Utils.readContentsAsString(new File(getHeadBranch()));
+    public void worktreeList() {
+        for (File worktreeHead : worktreeHeads()) {
+            File root = worktreeHead.getParentFile().getParentFile();
+            String branch = new File(Utils.readContentsAsString(worktreeHead))
+                    .getName();
+            System.out.println(root.getPath() + " [" + branch + "]");
+        }
     }
 
 
     /**
-     * Get the commit of the associated hash code.
+     * Prints the value of setting KEY, or sets it to VALUE if one is
+     * given. Settings are shared by every worktree.
      *
-     * @param hash code that identifies a commit.
-     * @return commit associated with the hash.
+     * @param key a setting name.
+     * @param value new value, or null to print the current one.
      */
-    private Commit getCommit(String hash) {
-        File commitFile = Utils.join(COMMITS, hash);
-        if (commitFile.exists()) {
-            return Utils.readObject(Utils.join(COMMITS, hash), Commit.class);
+    public void config(String key, String value) {
+        if (value == null) {
+            String current = getConfig().get(key);
+            if (current != null) {
+                System.out.println(current);
+            }
         } else {
-            Main.exitWithError("No commit with that id exists.");
-            return null;
+            getConfig().set(key, value);
+        }
+    }
+
+
+    /**
+     * Moves every loose branch file into .gitlet/packed-refs and writes a
+     * reachability bitmap for the head commit of every branch to
+     * .gitlet/graph/bitmaps. Bitmaps of commits that are no longer
+     * branch tips are dropped, unless a new tip's bitmap was built from
+     * them.
+     */
+    public void repack() {
+        getRefs().pack();
+        ArrayList<Integer> tips = new ArrayList<>();
+        for (String hash : getRefs().all().values()) {
+            tips.add(graphPosition(hash));
         }
+        getReachability().write(tips.stream().mapToInt(i -> i).toArray());
     }
 
 
     /**
-     * Output a log of a specific commit.
+     * Prints the ids of the commits reachable from any of REVS, newest
+     * first in commit-graph order. A rev prefixed with '^' excludes the
+     * commits reachable from it instead. Each rev is a branch name or a
+     * possibly abbreviated commit id. The sets are combined with bitmap
+     * OR and AND-NOT operations.
      *
-     * @param hash identifier of a specific commit.
+     * @param revs revs to include or exclude.
      */
-    private void printLog(String hash) {
-        Commit commit = getCommit(hash);
-        System.out.println("===");
-        System.out.println("commit " + hash);
-        System.out.println("Date: " + commit.getTimestamp());
-        System.out.println(commit.getMessage() + "\n");
+    public void revList(String... revs) {
+        Reachability reachability = getReachability();
+        Bitmap included = new Bitmap();
+        Bitmap excluded = new Bitmap();
+        for (String rev : revs) {
+            boolean exclude = rev.startsWith("^");
+            String name = exclude ? rev.substring(1) : rev;
+            Bitmap reached =
+                    reachability.reachable(graphPosition(resolveRev(name)));
+            if (exclude) {
+                excluded = excluded.or(reached);
+            } else {
+                included = included.or(reached);
+            }
+        }
+        int[] positions = included.andNot(excluded).toArray();
+        CommitGraph graph = getCommitGraph();
+        StringBuilder out = new StringBuilder();
+        for (int i = positions.length - 1; i >= 0; i -= 1) {
+            out.append(graph.hash(positions[i])).append('\n');
+        }
+        System.out.print(out);
     }
 
 
     /**
-     * Get a list of files that are untracked by the current commit.
+     * Prints the changes between two versions of the files. With no
+     * revs these are the staged files and the working directory, with
+     * one rev that commit and the working directory, and with two revs
+     * the first commit and the second. Each rev is a branch name or a
+     * possibly abbreviated commit id. With PATHS only files equal to or
+     * under one of them are compared.
      *
-     * @return Arraylist of file names in working directory untracked
-     *         by the current commit
+     * Files whose blob ids match on both sides are skipped without
+     * looking at their contents. FORMAT null prints a unified diff of
+     * each remaining file, "--stat" a count of the lines each changed,
+     * and "--name-only" just their names. Content diffs run in parallel
+     * on a pool of worker threads, and each file's output is written as
+     * soon as it and every file before it in path order are done. Only
+     * a window of files ahead of the one being written is compared at a
+     * time, and each result and blob is dropped once written, so memory
+     * follows the window rather than the whole diff. The
+     * algorithm is Myers unless diff.algorithm is set to histogram.
+     *
+     * @param format null, "--stat" or "--name-only".
+     * @param revs at most two revs to compare.
+     * @param paths paths to limit the comparison to.
      */
-    private ArrayList<String> getUntrackedFiles() {
-        ArrayList<String> untrackedFiles = new ArrayList<>();
-        TreeMap<String, Blob> headCommitObj =
-                getLastCommit().getCommittedFiles();
-        Set<Map.Entry<String, Blob>> trackedFiles =
-                headCommitObj.entrySet();
+    public void diff(String format, String[] revs, String[] paths) {
+        TreeMap<String, String> beforeIds = new TreeMap<>();
+        TreeMap<String, String> afterIds = new TreeMap<>();
+        HashMap<String, Blob> blobs = new HashMap<>();
+        readStaging();
+        if (revs.length == 0) {
+            stagedFiles(beforeIds, blobs);
+            workingVersions(beforeIds, afterIds, blobs);
+        } else {
+            committedFiles(resolveRev(revs[0]), beforeIds, blobs);
+            if (revs.length == 2) {
+                committedFiles(resolveRev(revs[1]), afterIds, blobs);
+            } else {
+                TreeMap<String, String> tracked = new TreeMap<>();
+                stagedFiles(tracked, blobs);
+                workingVersions(tracked, afterIds, blobs);
+            }
+        }
+        TreeSet<String> changed = new TreeSet<>();
+        for (TreeMap<String, String> side : List.of(beforeIds, afterIds)) {
+            for (String name : side.keySet()) {
+                if (!Objects.equals(beforeIds.get(name), afterIds.get(name))
+                        && underAny(name, paths)) {
+                    changed.add(name);
+                }
+            }
+        }
 
-        String[] cwdFiles = CWD.list();
-        for (String file : cwdFiles) {
-            boolean isTracked = false;
-            File aFile = Utils.join(CWD, file);
-            for (Map.Entry<String, Blob> tracked : trackedFiles) {
-                if (file.equals(tracked.getValue().getName())) {
-                    isTracked = true;
+        Writer out = stdout();
+        if ("--name-only".equals(format)) {
+            try {
+                for (String name : changed) {
+                    out.write(name + "\n");
                 }
+                out.flush();
+            } catch (IOException excp) {
+                /* Nothing reads the output any more. */
             }
-            if (!isTracked && aFile.isFile()) {
-                untrackedFiles.add(file);
+            return;
+        }
+        HashMap<String, Integer> uses = new HashMap<>();
+        for (String name : changed) {
+            for (String id : new String[] {
+                beforeIds.get(name), afterIds.get(name)}) {
+                if (id != null) {
+                    uses.merge(id, 1, Integer::sum);
+                }
             }
         }
-
-        return  untrackedFiles;
+        blobs.keySet().retainAll(uses.keySet());
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Diff.Algorithm algorithm = "histogram".equalsIgnoreCase(
+                    getConfig().get(Config.DIFF_ALGORITHM))
+                    ? Diff.Algorithm.HISTOGRAM : Diff.Algorithm.MYERS;
+            int width = 0;
+            for (String name : changed) {
+                width = Math.max(width, name.length());
+            }
+            int[] totals = new int[2];
+            ArrayDeque<Future<FileDiff>> window = new ArrayDeque<>();
+            for (String name : changed) {
+                String before = takeContents(blobs, uses,
+                        beforeIds.get(name));
+                String after = takeContents(blobs, uses, afterIds.get(name));
+                window.add(workers.submit(() -> new FileDiff(name, before,
+                        after, algorithm)));
+                if (window.size() == DIFF_WINDOW * threads) {
+                    writeFileDiff(out, window.poll().get(), format, width,
+                            totals);
+                }
+            }
+            while (!window.isEmpty()) {
+                writeFileDiff(out, window.poll().get(), format, width,
+                        totals);
+            }
+            int insertions = totals[0], deletions = totals[1];
+            if (format != null && !changed.isEmpty()) {
+                out.write(String.format(
+                        " %d file%s changed, %d insertion%s(+),"
+                        + " %d deletion%s(-)%n", changed.size(),
+                        changed.size() == 1 ? "" : "s", insertions,
+                        insertions == 1 ? "" : "s", deletions,
+                        deletions == 1 ? "" : "s"));
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* Nothing reads the output any more. */
+        } catch (InterruptedException | ExecutionException excp) {
+            throw Utils.error("Could not compare files: %s",
+                    excp.getMessage());
+        } finally {
+            workers.shutdownNow();
+        }
     }
 
 
+
     /**
-     * Get a list of files that are tracked by the current commit.
+     * Write FILEDIFF to OUT as a unified diff, or as a --stat line when
+     * FORMAT is not null, adding its insertions and deletions to TOTALS.
      *
-     * @return Arraylist of file names in working directory untracked
-     *         by the current commit
+     * @param out where to write.
+     * @param fileDiff the differences of one file.
+     * @param format null or "--stat".
+     * @param width width of the name column of --stat.
+     * @param totals insertions and deletions so far.
+     * @throws IOException if OUT cannot be written.
      */
-    private ArrayList<String> getTrackedFiles() {
-        TreeMap<String, Blob> headCommitObj =
-                getLastCommit().getCommittedFiles();
-        Set<Map.Entry<String, Blob>> trackedFiles =
-                headCommitObj.entrySet();
-
-        ArrayList<String> trackedFileList = new ArrayList<>();
-        for (Map.Entry<String, Blob> file : trackedFiles) {
-            trackedFileList.add(file.getValue().getName());
+    private static void writeFileDiff(Writer out, FileDiff fileDiff,
+                                      String format, int width,
+                                      int[] totals) throws IOException {
+        if (format == null) {
+            out.write(fileDiff.unified());
+        } else {
+            out.write(fileDiff.stat(width));
+            totals[0] += fileDiff.insertions();
+            totals[1] += fileDiff.deletions();
         }
-        return trackedFileList;
+        out.flush();
     }
 
     /**
-     * Assign staging variables by reading in values persisted into files.
+     * Return the contents of the blob with id ID in BLOBS, or null if ID
+     * is null, dropping the blob from BLOBS once USES says no other file
+     * needs it.
+     *
+     * @param blobs blobs still needed, keyed by id.
+     * @param uses remaining uses of each blob id.
+     * @param id a blob id, or null.
+     * @return its contents, or null
      */
-    @SuppressWarnings("unchecked")
-    private void readStaging() {
-        addStagingMap = Utils.readObject(addStagingFile, TreeMap.class);
-        rmStagingMap = Utils.readObject(rmStagingFile, TreeMap.class);
+    private static String takeContents(HashMap<String, Blob> blobs,
+                                       HashMap<String, Integer> uses,
+                                       String id) {
+        if (id == null) {
+            return null;
+        }
+        String contents = blobs.get(id).getFileContents();
+        if (uses.merge(id, -1, Integer::sum) == 0) {
+            blobs.remove(id);
+        }
+        return contents;
     }
 
+
     /**
-     * Persist staging area to files.
+     * Prints each line of FILENAME in the current commit with the commit
+     * that last changed it. The first-parent history is walked back from
+     * the current commit; commits whose changed-path filter and snapshot
+     * show they did not touch the file are passed over, and at each one
+     * that did, only the lines still unattributed are carried to its
+     * parent's version with Diff (see Blame). The walk stops once every
+     * line has its commit. The result is saved under .gitlet/cache/blame
+     * by commit and path, so blaming the same file again at the same
+     * commit reads no history.
+     *
+     * @param fileName name of a file in the current commit.
      */
-    private void writeStaging() {
-        Utils.writeObject(addStagingFile, addStagingMap);
-        Utils.writeObject(rmStagingFile, rmStagingMap);
+    public void blame(String fileName) {
+        CommitGraph graph = getCommitGraph();
+        String headHash = getLastCommitHash();
+        Blob blob = blobsByName(getCommit(headHash).getCommittedFiles())
+                .get(fileName);
+        if (blob == null) {
+            Main.exitWithError("File does not exist in that commit.");
+        }
+        String contents = blob.getFileContents();
+        List<String> lines = Blame.lines(contents);
+        File cacheFile = Utils.join(BLAME_CACHE,
+                Utils.sha1(headHash, "\0", fileName));
+        Blame blame = Blame.read(cacheFile, lines.size());
+        if (blame == null) {
+            blame = new Blame(contents);
+            int pos = graphPosition(headHash);
+            while (!blame.done()) {
+                int parent = graph.parent(pos);
+                if (parent == CommitGraph.NONE) {
+                    blame.finish(graph.hash(pos));
+                } else if (touches(pos, fileName)) {
+                    Blob before = blobsByName(getCommit(graph.hash(parent))
+                            .getCommittedFiles()).get(fileName);
+                    blame.step(graph.hash(pos),
+                            before == null ? null : before.getFileContents());
+                }
+                pos = parent;
+            }
+            getChangedPaths().flush();
+            blame.write(cacheFile);
+        }
+
+        DateTimeFormatter dates = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+                .withZone(ZoneId.systemDefault());
+        int width = Integer.toString(lines.size()).length();
+        Writer out = stdout();
+        try {
+            for (int k = 0; k < lines.size(); k += 1) {
+                String id = blame.commit(k);
+                long time = graph.timestamp(graphPosition(id));
+                out.write(String.format("%s (%s %" + width + "d) %s%n",
+                        id.substring(0, BLAME_ABBREV),
+                        dates.format(Instant.ofEpochSecond(time)), k + 1,
+                        lines.get(k)));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* Nothing reads the output any more. */
+        }
     }
 
+
+
     /**
-     * Clears the staging area.
+     * Runs a step of a binary search for the commit that introduced a
+     * bug. START detaches HEAD at the current commit, remembering the
+     * branch to return to; BAD, GOOD and SKIP mark REV, or the current
+     * commit if REV is null; RESET returns to the branch and ends the
+     * search.
+     *
+     * Once there is a bad commit and at least one good one, the
+     * candidates are the commits reachable from the bad commit and from
+     * no good one, found with reachability bitmaps. The number of
+     * candidates each candidate reaches is counted from the commit-graph
+     * alone, and the one splitting the candidates most evenly that is
+     * not skipped is checked out. Moving between commits only writes
+     * and deletes the files that differ between them.
+     *
+     * @param command start, bad, good, skip or reset.
+     * @param rev branch name or commit id to mark, or null.
+     * @throws IOException
      */
-    private void clearStaging() {
-        addStagingMap.clear();
-        rmStagingMap.clear();
+    public void bisect(String command, String rev) throws IOException {
+        if (command.equals("start")) {
+            readStaging();
+            if (BISECT.exists()) {
+                Main.exitWithError("Already bisecting.");
+            } else if (!addStagingMap.isEmpty() || !rmStagingMap.isEmpty()) {
+                Main.exitWithError("You have uncommitted changes.");
+            }
+            BISECT.mkdir();
+            Utils.writeContents(BISECT_START, getHeadBranch());
+            Utils.writeContents(BISECT_HEAD, getLastCommitHash());
+            Utils.writeContents(head, BISECT_HEAD.getAbsolutePath());
+            return;
+        } else if (!BISECT.exists()) {
+            Main.exitWithError("Not bisecting.");
+        }
+        String hash = command.equals("reset") || rev == null
+                ? getLastCommitHash() : resolveRev(rev);
+        switch (command) {
+        case "bad":
+            Utils.writeContents(BISECT_BAD, hash);
+            break;
+        case "good":
+        case "skip":
+            File marks = command.equals("good") ? BISECT_GOOD : BISECT_SKIP;
+            Utils.writeContents(marks, (marks.isFile()
+                    ? Utils.readContentsAsString(marks) : "") + hash + "\n");
+            break;
+        default:
+            String start = Utils.readContentsAsString(BISECT_START);
+            switchCommit(hash, readRef(new File(start)));
+            Utils.writeContents(head, start);
+            for (File file : BISECT.listFiles()) {
+                file.delete();
+            }
+            BISECT.delete();
+            return;
+        }
+        if (BISECT_BAD.isFile() && BISECT_GOOD.isFile()) {
+            bisectNext();
+        }
     }
 
+
+
     /**
-     * Displays what branches currently exist in lexical order, and marks the
-     * current branch with a '*'.
+     * Writes the files of the commit REV names to an archive in FORMAT,
+     * tar or zip, at OUTPUT, or to standard output if OUTPUT is null.
+     * Each file goes from its blob straight into the archive stream in
+     * name order, so nothing is written to the working directory and
+     * the archive is never held in memory. Every file is given the
+     * commit's time.
+     *
+     * @param rev branch name or commit id.
+     * @param format "tar" or "zip".
+     * @param output file to write, or null.
+     */
+    public void archive(String rev, String format, String output) {
+        String hash = resolveRev(rev);
+        long time = getCommitGraph().timestamp(graphPosition(hash));
+        TreeMap<String, Blob> files =
+                blobsByName(getCommit(hash).getCommittedFiles());
+        try (Archive archive = new Archive(format, new BufferedOutputStream(
+                output == null ? standardOutput()
+                        : new FileOutputStream(output)), time)) {
+            for (Blob blob : files.values()) {
+                archive.add(blob.getName(), blob.getFileContents()
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write archive: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Prepares for the next command run by the daemon. The staging maps
+     * start empty, as in a new process. The cached branches, settings,
+     * bitmaps and changed-path filters are dropped if another process
+     * changed their files since the last command ended; the commit-graph
+     * is kept, since it maps its file again whenever it misses a commit.
+     */
+    void beginCommand() {
+        addStagingMap = new TreeMap<>();
+        rmStagingMap = new TreeMap<>();
+        if (!Arrays.equals(cacheStamp, cacheStamp())) {
+            refs = null;
+            config = null;
+            reachability = null;
+            changedPaths = null;
+        }
+    }
+
+    /**
+     * Records the state of the cached files after a command run by the
+     * daemon. A command that ended early, with an error or an exception,
+     * may have left its caches half updated, so they are all dropped.
+     *
+     * @param completed true if the command returned normally.
+     */
+    void endCommand(boolean completed) {
+        if (!completed) {
+            commitGraph = null;
+            refs = null;
+            config = null;
+            reachability = null;
+            changedPaths = null;
+        }
+        cacheStamp = cacheStamp();
+    }
+
+
+
+    /* Helper functions below */
+
+
+    /**
+     * Sets up initial file structure.
+     *
+     * @throws IOException
+     */
+    private void setupPersistance() throws IOException {
+        GIT.mkdir();
+        BRANCHES.mkdir();
+        COMMITS.mkdir();
+        STAGING.mkdir();
+        addStagingFile.createNewFile();
+        rmStagingFile.createNewFile();
+        head.createNewFile();
+        MASTER.createNewFile();
+        writeStaging();
+    }
+
+
+    /**
+     * Saves commit to a commit file.
+     *
+     * @param commit commit object to be saved to file.
+     * @throws IOException
+     */
+    private void persistCommit(Commit commit) throws IOException {
+        String commitHash = writeCommit(commit);
+        writeRef(new File(getHeadBranch()), commitHash);
+    }
+
+
+    /**
+     * Saves commit to a commit file without moving any branch.
+     *
+     * @param commit commit object to be saved to file.
+     * @return hash of the saved commit.
+     * @throws IOException
+     */
+    private String writeCommit(Commit commit) throws IOException {
+        String commitHash = Utils.sha1(Utils.serialize(commit));
+        File commitFile = Utils.join(COMMITS, commitHash);
+
+        if (!commitFile.exists()) {
+            commitFile.createNewFile();
+            Utils.writeObject(commitFile, commit);
+            new MetadataLog(METADATA_LOG).append(commitHash, commit);
+            int pos = getCommitGraph().add(commitHash, commit);
+            getChangedPaths().put(pos, changedPaths(commit),
+                    bloomFalsePositiveRate());
+            getChangedPaths().flush();
+            MessageIndex.record(MESSAGE_JOURNAL, commitHash,
+                    commit.getMessage());
+        } else {
+            Main.exitWithError("Commit already exists.");
+        }
+        return commitHash;
+    }
+
+
+    /**
+     * Points the branch file REF at commit HASH. The new value is written
+     * to a lock file beside REF and moved into place, so concurrent
+     * commands in different worktrees cannot interleave their updates.
+     *
+     * @param ref branch file to update.
+     * @param hash commit the branch now points to.
+     */
+    private void writeRef(File ref, String hash) {
+        File lock = new File(ref.getPath() + LOCK_SUFFIX);
+        try {
+            if (!lock.createNewFile()) {
+                Main.exitWithError("Unable to lock " + ref.getName()
+                        + "; another gitlet command may be running.");
+            }
+            Utils.writeContents(lock, hash);
+            Files.move(lock.toPath(), ref.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            lock.delete();
+            throw Utils.error("Unable to update %s: %s", ref.getName(),
+                    excp.getMessage());
+        }
+    }
+
+
+    /**
+     * @return HEAD files of every worktree of this repository that still
+     *         exists, the main working directory's first.
+     */
+    private ArrayList<File> worktreeHeads() {
+        ArrayList<File> heads = new ArrayList<>();
+        heads.add(Utils.join(COMMON, "HEAD"));
+        List<String> names = Utils.plainFilenamesIn(WORKTREES);
+        if (names != null) {
+            for (String name : names) {
+                File worktreeGit = new File(Utils.readContentsAsString(
+                        Utils.join(WORKTREES, name)));
+                File worktreeHead = Utils.join(worktreeGit, "HEAD");
+                if (worktreeHead.isFile()) {
+                    heads.add(worktreeHead);
+                }
+            }
+        }
+        return heads;
+    }
+
+
+    /**
+     * @param branchFile a branch file.
+     * @return true if a worktree other than this one has BRANCHFILE
+     *         checked out.
+     */
+    private boolean checkedOutElsewhere(File branchFile) {
+        for (File worktreeHead : worktreeHeads()) {
+            if (!worktreeHead.getAbsoluteFile().equals(head.getAbsoluteFile())
+                    && Utils.readContentsAsString(worktreeHead)
+                    .equals(branchFile.getAbsolutePath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Takes the lock on which branch each worktree has checked out, so
+     * that checking that a branch is free and checking it out cannot
+     * interleave with the same steps in another worktree. The lock is a
+     * file created beside the worktree registrations, as writeRef
+     * creates one beside a branch; the caller deletes it when done.
+     *
+     * @return the lock file.
+     */
+    private File lockWorktrees() {
+        try {
+            if (!WORKTREES_LOCK.createNewFile()) {
+                Main.exitWithError("Unable to lock the worktrees; another"
+                        + " gitlet command may be running.");
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Unable to lock the worktrees: %s",
+                    excp.getMessage());
+        }
+        return WORKTREES_LOCK;
+    }
+
+
+    /**
+     * Returns the directory holding the commits and branches shared by
+     * every worktree. A worktree's .gitlet names it in a commondir file;
+     * the main working directory's .gitlet is that directory itself.
+     *
+     * @param git the .gitlet directory of the current working directory.
+     * @return the shared repository directory.
+     */
+    private static File commonDir(File git) {
+        File commondir = Utils.join(git, "commondir");
+        if (commondir.isFile()) {
+            return new File(Utils.readContentsAsString(commondir).trim());
+        }
+        return git;
+    }
+
+
+    /**
+     * @return directory address of HEAD branch
+     */
+    private String getHeadBranch() {
+        return Utils.readContentsAsString(head);
+    }
+
+
+    /**
+     * @return commit object of current commit.
+     */
+    private Commit getLastCommit() {
+        File lastCommitFile = Utils.join(COMMITS, getLastCommitHash());
+        return Utils.readObject(lastCommitFile, Commit.class);
+    }
+
+
+    /**
+     * @return current commit hash
+     */
+    private String getLastCommitHash() {
+        return readRef(new File(getHeadBranch()));
+    }
+
+
+    /**
+     * Return the commit REF points to. A branch is looked up through
+     * Refs, since repack may have moved it out of its loose file; any
+     * other ref, such as bisect's detached head, is read directly.
+     *
+     * @param ref a branch file, or another file holding a commit id.
+     * @return the commit id
+     */
+    private String readRef(File ref) {
+        if (ref.getAbsoluteFile().getParentFile()
+                .equals(BRANCHES.getAbsoluteFile())) {
+            return getRefs().get(ref.getName());
+        }
+        return Utils.readContentsAsString(ref);
+    }
+
+
+    /**
+     * Get the commit of the associated hash code.
+     *
+     * @param hash code that identifies a commit.
+     * @return commit associated with the hash.
+     */
+    private Commit getCommit(String hash) {
+        File commitFile = Utils.join(COMMITS, hash);
+        if (commitFile.exists()) {
+            return Utils.readObject(Utils.join(COMMITS, hash), Commit.class);
+        } else {
+            Main.exitWithError("No commit with that id exists.");
+            return null;
+        }
+    }
+
+
+    /**
+     * Get a list of files that are untracked by the current commit.
+     *
+     * @return Arraylist of file names in working directory untracked
+     *         by the current commit
+     */
+    private ArrayList<String> getUntrackedFiles() {
+        ArrayList<String> untrackedFiles = new ArrayList<>();
+        TreeMap<String, Blob> headCommitObj =
+                getLastCommit().getCommittedFiles();
+        Set<Map.Entry<String, Blob>> trackedFiles =
+                headCommitObj.entrySet();
+
+        SparseCheckout cone = sparseCone();
+        String[] cwdFiles = CWD.list();
+        for (String file : cwdFiles) {
+            if (!cone.contains(file)) {
+                continue;
+            }
+            boolean isTracked = false;
+            File aFile = Utils.join(CWD, file);
+            for (Map.Entry<String, Blob> tracked : trackedFiles) {
+                if (file.equals(tracked.getValue().getName())) {
+                    isTracked = true;
+                }
+            }
+            if (!isTracked && aFile.isFile()) {
+                untrackedFiles.add(file);
+            }
+        }
+
+        return  untrackedFiles;
+    }
+
+
+    /**
+     * Assign staging variables by reading in values persisted into files.
+     */
+    @SuppressWarnings("unchecked")
+    private void readStaging() {
+        addStagingMap = Utils.readObject(addStagingFile, TreeMap.class);
+        rmStagingMap = Utils.readObject(rmStagingFile, TreeMap.class);
+    }
+
+    /**
+     * Persist staging area to files.
+     */
+    private void writeStaging() {
+        Utils.writeObject(addStagingFile, addStagingMap);
+        Utils.writeObject(rmStagingFile, rmStagingMap);
+    }
+
+    /**
+     * Clears the staging area.
+     */
+    private void clearStaging() {
+        addStagingMap.clear();
+        rmStagingMap.clear();
+    }
+
+    /**
+     * Removes FILENAME from both staging areas, and from STAGED and
+     * REMOVED, which map the file names in them to their keys.
+     *
+     * @param fileName name of a file.
+     * @param staged keys of the add staging area by file name.
+     * @param removed keys of the remove staging area by file name.
+     */
+    private void unstage(String fileName, HashMap<String, String> staged,
+                         HashMap<String, String> removed) {
+        String id = staged.remove(fileName);
+        if (id != null) {
+            addStagingMap.remove(id);
+        }
+        id = removed.remove(fileName);
+        if (id != null) {
+            rmStagingMap.remove(id);
+        }
+    }
+
+    /**
+     * @param path a path given to add.
+     * @return true if PATH contains glob metacharacters.
+     */
+    private boolean isGlob(String path) {
+        return path.matches(".*[*?\\[{].*");
+    }
+
+    /**
+     * Lists the files under the working directory, outside .gitlet and
+     * inside the sparse-checkout cone CONE, whose paths match the glob
+     * PATTERN. Directories holding a .gitlet of their own, such as
+     * worktrees made inside this one, belong to another working
+     * directory and are skipped.
+     *
+     * @param cone the sparse-checkout cone.
+     * @param pattern glob pattern over paths relative to the working
+     *                directory.
+     * @return matching paths in lexical order.
+     */
+    private TreeSet<String> workingFiles(SparseCheckout cone, String pattern) {
+        PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        TreeSet<String> result = new TreeSet<>();
+        Path root = CWD.toPath();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path dir, BasicFileAttributes attrs) {
+                    return dir.endsWith(".gitlet") || !dir.equals(root)
+                            && Files.exists(dir.resolve(".gitlet"))
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    Path relative = root.relativize(file);
+                    if (attrs.isRegularFile() && matcher.matches(relative)
+                            && cone.contains(relative.toString())) {
+                        result.add(relative.toString());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw Utils.error("Could not list files: %s", excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Displays what branches currently exist in lexical order, and marks the
+     * current branch with a '*'. Branches that have diverged from the
+     * upstream branch show how many commits they are ahead and behind.
      */
     private void printBranches() {
         File headBranch = new File(getHeadBranch());
         String headBranchName = headBranch.getName();
-        String[] branchPaths = BRANCHES.list();
-        Arrays.sort(branchPaths);
+        TreeMap<String, String> branches = getRefs().all();
+        String[] branchPaths = branches.keySet().toArray(new String[0]);
+        TreeMap<String, int[]> divergence = divergence(branches);
 
         for (int i = 0; i < branchPaths.length; i++) {
+            String counts = aheadBehind(divergence.get(branchPaths[i]));
+            String suffix = counts.isEmpty() ? "" : " " + counts;
             if (!branchPaths[i].equals(headBranchName)) {
-                System.out.println(branchPaths[i]);
+                System.out.println(branchPaths[i] + suffix);
             } else {
-                System.out.println("*" + branchPaths[i]);
+                System.out.println("*" + branchPaths[i] + suffix);
             }
         }
 
@@ -741,16 +1782,148 @@ public class Gitlet {
     }
 
     /**
-     * Prints files staged for addition in lexical order.
+     * Return how far each of BRANCHES has diverged from the upstream
+     * branch, named by the branch.upstream setting and master by
+     * default. One walk over the commit-graph, from the newest position
+     * down, carries to each commit a bitset of the branches (and the
+     * upstream) that reach it, so every count comes out of that single
+     * pass however many branches there are.
+     *
+     * @param branches branch names mapped to their commits.
+     * @return map from each name to the number of commits it has that
+     *         the upstream lacks and the number the upstream has that
+     *         it lacks; empty if there is no upstream branch
+     */
+    private TreeMap<String, int[]> divergence(
+            TreeMap<String, String> branches) {
+        TreeMap<String, int[]> result = new TreeMap<>();
+        String upstream = getConfig().get(Config.UPSTREAM);
+        String upstreamHash = branches.get(
+                upstream == null ? MASTER.getName() : upstream);
+        if (upstreamHash == null) {
+            return result;
+        }
+        String[] names = branches.keySet().toArray(new String[0]);
+        int up = names.length;
+        int[] tips = new int[up + 1];
+        for (int i = 0; i < up; i += 1) {
+            tips[i] = graphPosition(branches.get(names[i]));
+        }
+        tips[up] = graphPosition(upstreamHash);
+
+        CommitGraph graph = getCommitGraph();
+        int words = (up + 1 + Long.SIZE - 1) / Long.SIZE;
+        long[][] reachedBy = new long[graph.size()][];
+        int newest = 0;
+        for (int i = 0; i <= up; i += 1) {
+            if (reachedBy[tips[i]] == null) {
+                reachedBy[tips[i]] = new long[words];
+            }
+            reachedBy[tips[i]][i / Long.SIZE] |= 1L << i;
+            newest = Math.max(newest, tips[i]);
+        }
+        int[] ahead = new int[up];
+        int[] shared = new int[up];
+        int upstreamSize = 0;
+        for (int pos = newest; pos >= 0; pos -= 1) {
+            long[] bits = reachedBy[pos];
+            if (bits == null) {
+                continue;
+            }
+            reachedBy[pos] = null;
+            for (int parent : new int[] {graph.parent(pos),
+                    graph.secondParent(pos)}) {
+                if (parent != CommitGraph.NONE) {
+                    if (reachedBy[parent] == null) {
+                        reachedBy[parent] = new long[words];
+                    }
+                    for (int w = 0; w < words; w += 1) {
+                        reachedBy[parent][w] |= bits[w];
+                    }
+                }
+            }
+            boolean inUpstream = (bits[up / Long.SIZE] & 1L << up) != 0;
+            if (inUpstream) {
+                upstreamSize += 1;
+            }
+            for (int w = 0; w < words; w += 1) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    int branch = w * Long.SIZE
+                            + Long.numberOfTrailingZeros(word);
+                    if (branch == up) {
+                        continue;
+                    } else if (inUpstream) {
+                        shared[branch] += 1;
+                    } else {
+                        ahead[branch] += 1;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < up; i += 1) {
+            result.put(names[i],
+                    new int[] {ahead[i], upstreamSize - shared[i]});
+        }
+        return result;
+    }
+
+    /**
+     * @param counts commits ahead and behind, or null.
+     * @return the counts as "[ahead A, behind B]", leaving out zeros, or
+     *         "" if both are zero or COUNTS is null
+     */
+    private static String aheadBehind(int[] counts) {
+        if (counts == null || counts[0] == 0 && counts[1] == 0) {
+            return "";
+        } else if (counts[1] == 0) {
+            return "[ahead " + counts[0] + "]";
+        } else if (counts[0] == 0) {
+            return "[behind " + counts[1] + "]";
+        }
+        return "[ahead " + counts[0] + ", behind " + counts[1] + "]";
+    }
+
+    /**
+     * Pairs files staged for removal with new files staged for addition
+     * that look like the same file under a new name.
+     *
+     * @return map from old name to new name of each staged rename.
+     */
+    private TreeMap<String, String> stagedRenames() {
+        readStaging();
+        TreeMap<String, Blob> tracked =
+                blobsByName(getLastCommit().getCommittedFiles());
+        TreeMap<String, Blob> added = new TreeMap<>();
+        for (Blob blob : addStagingMap.values()) {
+            if (!tracked.containsKey(blob.getName())) {
+                added.put(blob.getName(), blob);
+            }
+        }
+        return RenameDetector.detect(blobsByName(rmStagingMap), added);
+    }
+
+    /**
+     * Prints files staged for addition in lexical order. Files that are
+     * the new name of a staged rename say which file they came from.
+     *
+     * @param renames map from old name to new name of staged renames.
      */
     @SuppressWarnings("unchecked")
-    private void printStagedForAddition() {
+    private void printStagedForAddition(TreeMap<String, String> renames) {
         addStagingMap = Utils.readObject(addStagingFile, TreeMap.class);
         ArrayList<String> sortedStagedFiles = new ArrayList<>();
+        TreeMap<String, String> renamedFrom = new TreeMap<>();
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            renamedFrom.put(rename.getValue(), rename.getKey());
+        }
 
         Set<Map.Entry<String, Blob>> stagingEntries = addStagingMap.entrySet();
         for (Map.Entry<String, Blob> staged : stagingEntries) {
-            sortedStagedFiles.add(staged.getValue().getName());
+            String name = staged.getValue().getName();
+            if (renamedFrom.containsKey(name)) {
+                name += " (renamed from " + renamedFrom.get(name) + ")";
+            }
+            sortedStagedFiles.add(name);
         }
 
         Collections.sort(sortedStagedFiles);
@@ -763,16 +1936,21 @@ public class Gitlet {
 
 
     /**
-     * Prints files staged for removal in lexical order.
+     * Prints files staged for removal in lexical order, leaving out
+     * files listed as renamed under Staged Files.
+     *
+     * @param renames map from old name to new name of staged renames.
      */
     @SuppressWarnings("unchecked")
-    private void printStagedForRemoval() {
+    private void printStagedForRemoval(TreeMap<String, String> renames) {
         ArrayList<String> sortedStagedFiles = new ArrayList<>();
         rmStagingMap = Utils.readObject(rmStagingFile, TreeMap.class);
 
         Set<Map.Entry<String, Blob>> rmEntries = rmStagingMap.entrySet();
         for (Map.Entry<String, Blob> staged : rmEntries) {
-            sortedStagedFiles.add(staged.getValue().getName());
+            if (!renames.containsKey(staged.getValue().getName())) {
+                sortedStagedFiles.add(staged.getValue().getName());
+            }
         }
 
         Collections.sort(sortedStagedFiles);
@@ -806,10 +1984,14 @@ public class Gitlet {
         Set<Map.Entry<String, Blob>> rmEntries = rmStagingMap.entrySet();
         ArrayList<String> printList = new ArrayList<>();
         List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        SparseCheckout cone = sparseCone();
         boolean tracked, stagedAdd, stagedRm, modifiedCommit, modifiedAdd;
         tracked = stagedAdd = stagedRm = modifiedCommit = modifiedAdd
                 = false;
         for (String file : cwdFiles) {
+            if (!cone.contains(file)) {
+                continue;
+            }
             File aFile = Utils.join(CWD, file);
             Blob fileBlob = new Blob(file, Utils.readContentsAsString(aFile));
             String blobHash = Utils.sha1(Utils.serialize(fileBlob));
@@ -847,7 +2029,8 @@ public class Gitlet {
                     stagedRm = true;
                 }
             }
-            if (!stagedRm && !Utils.join(CWD, trackedFile.getValue()
+            if (!stagedRm && cone.contains(trackedFile.getValue().getName())
+                    && !Utils.join(CWD, trackedFile.getValue()
                     .getName()).exists()) {
                 printList.add(trackedFile.getValue().getName() + " (deleted)");
             }
@@ -918,405 +2101,882 @@ public class Gitlet {
         Set<Map.Entry<String, Blob>> rmEntries = rmStagingMap.entrySet();
         String[] cwdFiles = CWD.list();
 
-        for (Map.Entry<String, Blob> staged : rmEntries) {
-            for (String file : cwdFiles) {
-                if (file.equals(staged.getValue().getName())) {
-                    untrackedFiles.add(file);
-                }
-            }
-        }
+        for (Map.Entry<String, Blob> staged : rmEntries) {
+            for (String file : cwdFiles) {
+                if (file.equals(staged.getValue().getName())) {
+                    untrackedFiles.add(file);
+                }
+            }
+        }
+
+        for (String file : uncommittedFiles) {
+            boolean untrackedInAdd = true;
+            for (Map.Entry<String, Blob> staged : addStagingEntries) {
+                if (file.equals(staged.getValue().getName())) {
+                    untrackedInAdd = false;
+                }
+            }
+            if (untrackedInAdd) {
+                untrackedFiles.add(file);
+            }
+        }
+
+        if (!untrackedFiles.isEmpty()) {
+            Collections.sort(untrackedFiles);
+            for (String file : untrackedFiles) {
+                System.out.println(file);
+            }
+        }
+
+        System.out.println();
+    }
+
+
+    /**
+     * Return commit based on commit id that may
+     * be abbreviated.
+     *
+     * @param commitID possibly abbraviated ID
+     * @return the associated commit to COMMITID
+     */
+    private Commit getAbbrevCommit(String commitID) {
+        return getCommit(resolveCommitID(commitID));
+    }
+
+    /**
+     * Return the full hash of a commit id that may be abbreviated.
+     *
+     * @param commitID possibly abbraviated ID
+     * @return the full hash of the commit COMMITID names
+     */
+    private String resolveCommitID(String commitID) {
+        if (Utils.join(COMMITS, commitID).exists()) {
+            return commitID;
+        }
+        List<String> allCommits = Utils.plainFilenamesIn(COMMITS);
+        for (String aCommit : allCommits) {
+            if (aCommit.startsWith(commitID)) {
+                return aCommit;
+            }
+        }
+        Main.exitWithError("No commit with that id exists.");
+        return null;
+    }
+
+    /**
+     * Checks out the candidate of the bisection that best halves the
+     * remaining candidates, or reports the first bad commit once only
+     * the bad commit is left.
+     *
+     * @throws IOException
+     */
+    private void bisectNext() throws IOException {
+        CommitGraph graph = getCommitGraph();
+        Reachability reachability = getReachability();
+        int bad = graphPosition(Utils.readContentsAsString(BISECT_BAD));
+        Bitmap good = new Bitmap();
+        for (String hash
+                : Utils.readContentsAsString(BISECT_GOOD).split("\n")) {
+            good = good.or(reachability.reachable(graphPosition(hash)));
+        }
+        Bitmap skipped = new Bitmap();
+        if (BISECT_SKIP.isFile()) {
+            for (String hash
+                    : Utils.readContentsAsString(BISECT_SKIP).split("\n")) {
+                skipped.add(graphPosition(hash));
+            }
+        }
+        Bitmap candidates = reachability.reachable(bad).andNot(good);
+        if (!candidates.contains(bad)) {
+            Main.exitWithError("The bad commit is an ancestor of a good"
+                    + " commit.");
+        }
+
+        int[] positions = candidates.toArray();
+        int[] reached = new int[positions.length];
+        int best = -1, bestScore = -1;
+        for (int i = 0; i < positions.length; i += 1) {
+            int pos = positions[i];
+            int first = graph.parent(pos), second = graph.secondParent(pos);
+            boolean inFirst = first != CommitGraph.NONE
+                    && candidates.contains(first);
+            boolean inSecond = second != CommitGraph.NONE
+                    && candidates.contains(second);
+            if (inFirst && inSecond) {
+                reached[i] = reachability.reachable(pos).and(candidates)
+                        .cardinality();
+            } else if (inFirst || inSecond) {
+                reached[i] = 1 + reached[Arrays.binarySearch(positions,
+                        inFirst ? first : second)];
+            } else {
+                reached[i] = 1;
+            }
+            int score = Math.min(reached[i], positions.length - reached[i]);
+            if (pos != bad && !skipped.contains(pos) && score >= bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        if (positions.length == 1) {
+            Commit commit = getCommit(graph.hash(bad));
+            System.out.println(graph.hash(bad) + " is the first bad commit");
+            System.out.println(commit.getMessage());
+        } else if (best == -1) {
+            System.out.println("There are only 'skip'ped commits left to"
+                    + " test.\nThe first bad commit could be any of:");
+            for (int pos : positions) {
+                System.out.println(graph.hash(pos));
+            }
+        } else {
+            String hash = graph.hash(positions[best]);
+            switchCommit(getLastCommitHash(), hash);
+            Utils.writeContents(BISECT_HEAD, hash);
+            int left = Math.max(reached[best] - 1,
+                    positions.length - reached[best] - 1);
+            int steps = 32 - Integer.numberOfLeadingZeros(left);
+            System.out.println("Bisecting: " + left + " revision"
+                    + (left == 1 ? "" : "s") + " left to test after this"
+                    + " (roughly " + steps + " step"
+                    + (steps == 1 ? "" : "s") + ")");
+            System.out.println("[" + hash + "] "
+                    + getCommit(hash).getMessage());
+        }
+    }
+
+    /**
+     * Brings the working directory from the files of commit FROMHASH to
+     * those of commit TOHASH. Unlike updateWorkingTree, only files whose
+     * blob differs are deleted or written, so moving between nearby
+     * commits touches few files.
+     *
+     * @param fromHash commit currently checked out.
+     * @param toHash commit to check out.
+     * @throws IOException
+     */
+    private void switchCommit(String fromHash, String toHash)
+            throws IOException {
+        TreeMap<String, Blob> from = getCommit(fromHash).getCommittedFiles();
+        TreeMap<String, Blob> to = getCommit(toHash).getCommittedFiles();
+        TreeMap<String, Blob> changed = new TreeMap<>(to);
+        changed.keySet().removeAll(from.keySet());
+        checkUntrackedInTheWay(changed);
+        SparseCheckout cone = sparseCone();
+        TreeMap<String, Blob> toByName = blobsByName(to);
+        for (Map.Entry<String, Blob> file : from.entrySet()) {
+            String name = file.getValue().getName();
+            if (!to.containsKey(file.getKey()) && !toByName.containsKey(name)
+                    && cone.contains(name)) {
+                Utils.join(CWD, name).delete();
+            }
+        }
+        for (Blob blob : changed.values()) {
+            if (cone.contains(blob.getName())) {
+                writeWorkingFile(blob);
+            }
+        }
+    }
+
+    /**
+     * Add the files of commit HASH to IDS, mapping each name to its blob
+     * id, and each blob to BLOBS under its id.
+     *
+     * @param hash a commit id.
+     * @param ids receives file names and blob ids.
+     * @param blobs receives blobs by id.
+     */
+    private void committedFiles(String hash, TreeMap<String, String> ids,
+                                Map<String, Blob> blobs) {
+        for (Map.Entry<String, Blob> file
+                : getCommit(hash).getCommittedFiles().entrySet()) {
+            ids.put(file.getValue().getName(), file.getKey());
+            blobs.put(file.getKey(), file.getValue());
+        }
+    }
+
+    /**
+     * Add to IDS the files the next commit would have: those of the
+     * current commit less staged removals, plus staged additions, each
+     * name mapped to its blob id. Their blobs are added to BLOBS.
+     *
+     * @param ids receives file names and blob ids.
+     * @param blobs receives blobs by id.
+     */
+    private void stagedFiles(TreeMap<String, String> ids,
+                             Map<String, Blob> blobs) {
+        committedFiles(getLastCommitHash(), ids, blobs);
+        for (Blob removed : rmStagingMap.values()) {
+            ids.remove(removed.getName());
+        }
+        for (Map.Entry<String, Blob> added : addStagingMap.entrySet()) {
+            ids.put(added.getValue().getName(), added.getKey());
+            blobs.put(added.getKey(), added.getValue());
+        }
+    }
+
+    /**
+     * Add to WORKING the version in the working directory of each file
+     * of TRACKED, with its blob id, and the blob to BLOBS. Files outside
+     * the sparse-checkout cone keep their id in TRACKED; files deleted
+     * from the working directory are left out.
+     *
+     * @param tracked names and blob ids of the files to look at.
+     * @param working receives names and blob ids of working files.
+     * @param blobs receives blobs by id.
+     */
+    private void workingVersions(TreeMap<String, String> tracked,
+                                 TreeMap<String, String> working,
+                                 Map<String, Blob> blobs) {
+        SparseCheckout cone = sparseCone();
+        for (Map.Entry<String, String> file : tracked.entrySet()) {
+            String name = file.getKey();
+            File workingFile = Utils.join(CWD, name);
+            if (!cone.contains(name)) {
+                working.put(name, file.getValue());
+            } else if (workingFile.isFile()) {
+                Blob blob = new Blob(name,
+                        Utils.readContentsAsString(workingFile));
+                String id = Utils.sha1(Utils.serialize(blob));
+                working.put(name, id);
+                blobs.put(id, blob);
+            }
+        }
+    }
+
+    /**
+     * @param name a file name.
+     * @param paths paths to limit a command to.
+     * @return true if PATHS is empty or NAME is one of them or under one
+     */
+    private static boolean underAny(String name, String[] paths) {
+        for (String path : paths) {
+            if (name.equals(path) || name.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return paths.length == 0;
+    }
+
+    /**
+     * Return the commit a branch name or possibly abbreviated commit id
+     * names. A branch wins over a commit id with the same prefix.
+     *
+     * @param rev a branch name or commit id.
+     * @return the full hash of the commit
+     */
+    private String resolveRev(String rev) {
+        String hash = getRefs().get(rev);
+        if (hash != null) {
+            return hash;
+        }
+        return resolveCommitID(rev);
+    }
+
+    /**
+     * Commit the state after the merge occures.
+     *
+     * @param mergedFiles resulting files after merge.
+     * @param branch branch name.
+     * @throws IOException
+     */
+    private void commitMerge(TreeMap<String, Blob> mergedFiles,
+                             String branch)
+            throws IOException {
+        File currentBranchFile = new File(getHeadBranch());
+        String currentCommit = getLastCommitHash();
+        String branchCommit = getRefs().get(branch);
+        String message = "Merged " + branch + " into "
+                + currentBranchFile.getName() + ".";
+        MergeCommit mergeCommit = new MergeCommit(message, currentCommit,
+                branchCommit, mergedFiles);
+        checkUntrackedInTheWay(mergedFiles);
+        persistCommit(mergeCommit);
+        updateWorkingTree(getCommit(currentCommit).getCommittedFiles(),
+                mergedFiles);
+        clearStaging();
+        writeStaging();
+    }
+
+
+    /**
+     * Addresses merge conflicts by writing both versions of
+     * conflicted files and notation into conflicted file.
+     *
+     *      <<<<<<< HEAD
+     *      * contents of file in current branch *
+     *      =======
+     *      * contents of file in given branch *
+     *      >>>>>>>
+     *
+     * @param fileName name of the conflicted file
+     * @param currentFile conflicted file in current commit, or null
+     * @param givenFile conflicted file in given commit, or null
+     * @return file with addressed merge conflict
+     */
+    private Blob mergeConflictFile(String fileName, Blob currentFile,
+                                   Blob givenFile) {
+        String currentFileContents;
+        String givenFileContents;
+        if (currentFile == null) {
+            currentFileContents = "";
+        } else {
+            currentFileContents = currentFile.getFileContents();
+        }
+        if (givenFile == null) {
+            givenFileContents = "";
+        } else {
+            givenFileContents = givenFile.getFileContents();
+        }
+        String mergeContent = "<<<<<<< HEAD\n" + currentFileContents
+                + "=======\n" + givenFileContents + ">>>>>>>\n";
+        return new Blob(fileName, mergeContent);
+    }
+
+    /**
+     * Get the files at the split point of a merge. With one best common
+     * ancestor these are its files. After criss-cross merges there can
+     * be several; they are merged with one another, recursively, into a
+     * virtual split point.
+     *
+     * @param splitPoints commit-graph positions of the best common
+     *                    ancestors, newest first.
+     * @return files at the (possibly virtual) split point.
+     */
+    private TreeMap<String, Blob> splitPointFiles(int[] splitPoints) {
+        CommitGraph graph = getCommitGraph();
+        TreeMap<String, Blob> files =
+                getCommit(graph.hash(splitPoints[0])).getCommittedFiles();
+        for (int i = 1; i < splitPoints.length; i += 1) {
+            int[] inner = graph.mergeBases(splitPoints[0], splitPoints[i]);
+            files = mergeTrees(splitPointFiles(inner), files,
+                    getCommit(graph.hash(splitPoints[i]))
+                            .getCommittedFiles()).getFiles();
+        }
+        return files;
+    }
+
 
-        for (String file : uncommittedFiles) {
-            boolean untrackedInAdd = true;
-            for (Map.Entry<String, Blob> staged : addStagingEntries) {
-                if (file.equals(staged.getValue().getName())) {
-                    untrackedInAdd = false;
-                }
+    /**
+     * Merge the files of CURRENT and GIVEN relative to their split
+     * point SPLIT. Files are matched by name, after following any
+     * renames either side made since the split point, and compared by
+     * contents. A merged file keeps the name the renaming side gave it.
+     * A file renamed to different names on the two sides is kept under
+     * both, each with its side's contents, and both are in conflict.
+     * Two different files that end up with the same name, such as a
+     * rename onto a file the other side added, are merged into one file
+     * with conflict markers, the current side's version first.
+     *
+     * @param split files at the split point.
+     * @param current files in the current commit.
+     * @param given files in the given commit.
+     * @return merged files and the names of files in conflict.
+     */
+    private MergeResult mergeTrees(TreeMap<String, Blob> split,
+                                   TreeMap<String, Blob> current,
+                                   TreeMap<String, Blob> given) {
+        TreeMap<String, Blob> splitByName = blobsByName(split);
+        TreeMap<String, Blob> currentByName = blobsByName(current);
+        TreeMap<String, Blob> givenByName = blobsByName(given);
+        TreeMap<String, String> currentRenames =
+                followRenames(splitByName, currentByName);
+        TreeMap<String, String> givenRenames =
+                followRenames(splitByName, givenByName);
+        TreeSet<String> allNames = new TreeSet<>(splitByName.keySet());
+        allNames.addAll(currentByName.keySet());
+        allNames.addAll(givenByName.keySet());
+
+        TreeMap<String, Blob> byName = new TreeMap<>();
+        TreeSet<String> fromCurrent = new TreeSet<>();
+        TreeSet<String> conflicts = new TreeSet<>();
+        for (String fileName : allNames) {
+            Blob s = splitByName.get(fileName);
+            Blob c = currentByName.get(fileName);
+            Blob g = givenByName.get(fileName);
+            String currentName = currentRenames.get(fileName);
+            String givenName = givenRenames.get(fileName);
+            if (currentName != null && givenName != null
+                    && !currentName.equals(givenName)) {
+                placeMerged(byName, fromCurrent, conflicts, currentName, c,
+                        true);
+                placeMerged(byName, fromCurrent, conflicts, givenName, g,
+                        false);
+                conflicts.add(currentName);
+                conflicts.add(givenName);
+                continue;
             }
-            if (untrackedInAdd) {
-                untrackedFiles.add(file);
+            String resultName = currentName != null ? currentName
+                    : givenName != null ? givenName : fileName;
+            Blob merged;
+            if (sameContents(c, g) || sameContents(s, g)) {
+                merged = c;
+            } else if (sameContents(s, c)) {
+                merged = g;
+            } else {
+                merged = mergeConflictFile(resultName, c, g);
+                conflicts.add(resultName);
             }
-        }
-
-        if (!untrackedFiles.isEmpty()) {
-            Collections.sort(untrackedFiles);
-            for (String file : untrackedFiles) {
-                System.out.println(file);
+            if (merged != null) {
+                placeMerged(byName, fromCurrent, conflicts, resultName,
+                        merged, currentName != null
+                        || givenName == null && merged == c);
             }
         }
-
-        System.out.println();
+        TreeMap<String, Blob> result = new TreeMap<>();
+        for (Blob blob : byName.values()) {
+            result.put(Utils.sha1(Utils.serialize(blob)), blob);
+        }
+        return new MergeResult(result, new ArrayList<>(conflicts));
     }
 
 
     /**
-     * Return commit based on commit id that may
-     * be abbreviated.
+     * Put BLOB into the merged files BYNAME under NAME. If a file with
+     * different contents is already there, the two are merged into one
+     * file with conflict markers and NAME is added to CONFLICTS.
      *
-     * @param commitID possibly abbraviated ID
-     * @return the associated commit to COMMITID
+     * @param byName merged files so far, keyed by name.
+     * @param fromCurrent names in BYNAME whose file came from the
+     *                    current side.
+     * @param conflicts names of files in conflict.
+     * @param name name the file gets in the merged tree.
+     * @param blob the file.
+     * @param current true if BLOB came from the current side.
      */
-    private Commit getAbbrevCommit(String commitID) {
-        File commitFile = Utils.join(COMMITS, commitID);
-        Commit commit = null;
-        if (commitFile.exists()) {
-            commit = Utils.readObject(commitFile, Commit.class);
-            return commit;
-        } else {
-            List<String> allCommits = Utils.plainFilenamesIn(COMMITS);
-            for (String aCommit : allCommits) {
-                if (aCommit.startsWith(commitID)) {
-                    File abbrevCommitFile = Utils.join(COMMITS, aCommit);
-                    commit = Utils.readObject(abbrevCommitFile, Commit.class);
-                    return commit;
-                }
+    private void placeMerged(TreeMap<String, Blob> byName,
+                             TreeSet<String> fromCurrent,
+                             TreeSet<String> conflicts, String name,
+                             Blob blob, boolean current) {
+        Blob existing = byName.get(name);
+        if (existing == null) {
+            if (!blob.getName().equals(name)) {
+                blob = new Blob(name, blob.getFileContents());
             }
-            Main.exitWithError("No commit with that id exists.");
-            return null;
+            byName.put(name, blob);
+            if (current) {
+                fromCurrent.add(name);
+            }
+        } else if (!sameContents(existing, blob)) {
+            boolean existingCurrent = fromCurrent.contains(name);
+            byName.put(name, mergeConflictFile(name,
+                    existingCurrent || !current ? existing : blob,
+                    existingCurrent || !current ? blob : existing));
+            conflicts.add(name);
         }
     }
 
+
     /**
-     * Decide which versions of files should be committed
-     * in the merge.
-     * The merge logic:
-     *      1. Any files that have been modified in the given branch
-     *      since the split point, but not modified in the current
-     *      branch since the split point are changed to their
-     *      versions in the given branch. These files will then
-     *      all be automatically staged.
-     *      2. Any files that have been modified in both the current and
-     *      given branch in the same way are left unchanged by the
-     *      merge. If a file was removed from both the current and given
-     *      branch, but a file of the same name is present in the working
-     *      directory, it is left alone and continues to be absent in the merge.
-     *      3. Any files that were not present at the split point and are present
-     *      only in the current branch remain as they are.
-     *      4. Any files that were not present at the split point and
-     *      are present only in the given branch are checked out and staged.
-     *      5. Any files present at the split point, unmodified in the current branch,
-     *      and absent in the given branch are removed (and untracked).
-     *      6. Any files present at the split point, unmodified in the given branch,
-     *      and absent in the current branch remain absent.
-     *      7. Any files modified in different ways in the current and given branches
-     *      are in conflict. In this case, contents of conflicted file replaced with:
-     *
-     *          <<<<<<< HEAD
-     *          contents of file in current branch
-     *          =======
-     *          contents of file in given branch
-     *          >>>>>>>
-     *
-     * @param result files that will be merged.
-     * @param inCurrent true if in current directory.
-     * @param inGiven true if in given directory.
-     * @param inSplit true if in splitpoint.
-     * @param givenModied true if modified from split in the given branch.
-     * @param currentModified true if modified from split in current branch.
-     * @param cgsHash array of hash values, current, given, split
-     *                commit respectively.
-     * @param cgsBlob array of blobs, current, given, split
-     *                branches respectively.
-     * @return boolean that indicated true if a merge conflict occured.
-     */
-    private boolean handleMergingLogic(TreeMap<String, Blob> result,
-                                       boolean inCurrent, boolean inGiven,
-                                       boolean inSplit, boolean givenModied,
-                                       boolean currentModified,
-                                       String[] cgsHash, Blob[] cgsBlob) {
-        boolean conflict = false;
-        if (!inSplit && !inGiven && inCurrent) {
-            result.put(cgsHash[0], cgsBlob[0]);
-        } else if (!inSplit && !inCurrent && inGiven) {
-            result.put(cgsHash[1], cgsBlob[1]);
-            if (!cgsHash[1].equals(cgsHash[0])) {
-                addStagingMap.put(cgsHash[1], cgsBlob[1]);
-            }
-        } else if ((!inCurrent && !inCurrent)
-                || (currentModified && givenModied)) {
-            if (inCurrent) {
-                if (cgsHash[0].equals(cgsHash[1])) {
-                    result.put(cgsHash[0], cgsBlob[0]);
-                } else {
-                    Blob conflictBlob =
-                            mergeConflictFile(cgsBlob[0], cgsBlob[1]);
-                    result.put(Utils.sha1(Utils.serialize(conflictBlob)),
-                            conflictBlob);
-                    conflict = true;
-                }
+     * Detects files of SPLIT renamed in OTHER and re-keys their entries
+     * in OTHER under the name they had at the split point.
+     *
+     * @param split files at the split point, keyed by name.
+     * @param other files on one side of the merge, keyed by name.
+     * @return map from split point name to new name of each rename.
+     */
+    private TreeMap<String, String> followRenames(TreeMap<String, Blob> split,
+                                                  TreeMap<String, Blob> other) {
+        TreeMap<String, Blob> removed = new TreeMap<>();
+        TreeMap<String, Blob> added = new TreeMap<>();
+        for (Map.Entry<String, Blob> entry : split.entrySet()) {
+            if (!other.containsKey(entry.getKey())) {
+                removed.put(entry.getKey(), entry.getValue());
             }
-        } else if (!currentModified && !inGiven) {
-            rmStagingMap.put(cgsHash[0], cgsBlob[0]);
-        } else if (givenModied && !currentModified) {
-            result.put(cgsHash[1], cgsBlob[1]);
-            if (!cgsHash[1].equals(cgsHash[0])) {
-                addStagingMap.put(cgsHash[1], cgsBlob[1]);
+        }
+        for (Map.Entry<String, Blob> entry : other.entrySet()) {
+            if (!split.containsKey(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue());
             }
-        } else if (!givenModied && currentModified) {
-            result.put(cgsHash[0], cgsBlob[0]);
         }
-        if (conflict) {
-            System.out.println("Encountered a merge conflict.");
+        TreeMap<String, String> renames =
+                RenameDetector.detect(removed, added);
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            other.put(rename.getKey(), other.remove(rename.getValue()));
         }
-        return conflict;
+        return renames;
     }
 
 
     /**
-     * Combine all file entries from multiple sets into a single TreeMap.
-     *
-     * @param allFiles contains all the files.
-     * @param currentEntries contains entries in head branch.
-     * @param givenEntries contains entries in given branch.
-     * @param splitEntries contains entries in the split branch.
+     * @param a a file, or null if absent.
+     * @param b a file, or null if absent.
+     * @return true if both files are absent or have the same contents.
      */
-    private void combineFiles(TreeMap<String, String> allFiles,
-                              Set<Map.Entry<String, Blob>> currentEntries,
-                              Set<Map.Entry<String, Blob>> givenEntries,
-                              Set<Map.Entry<String, Blob>> splitEntries) {
-        for (Map.Entry<String, Blob> entry : currentEntries) {
-            allFiles.put(entry.getValue().getName(), entry.getKey());
-        }
-        for (Map.Entry<String, Blob> entry : givenEntries) {
-            allFiles.put(entry.getValue().getName(), entry.getKey());
-        }
-        for (Map.Entry<String, Blob> entry : splitEntries) {
-            allFiles.put(entry.getValue().getName(), entry.getKey());
+    private boolean sameContents(Blob a, Blob b) {
+        if (a == null || b == null) {
+            return a == b;
         }
+        return a.getFileContents().equals(b.getFileContents());
     }
 
+
     /**
-     * Handles merge error cases.
+     * Index the blob ids of a snapshot or staging area by file name.
      *
-     * @param allEntrie all files.
-     * @param branchName name of given branch.
-     * @param givenBranchFile given branch.
-     * @param splitCommit the split commit.
-     * @throws IOException
+     * @param files files keyed by blob hash.
+     * @return the blob hash of each file, keyed by file name.
      */
-    private void handleMergeErrorCases(Set<Map.Entry<String, String>> allEntrie,
-                                       String branchName, File givenBranchFile,
-                                       Commit splitCommit) throws IOException {
-        readStaging();
-        if (!addStagingMap.isEmpty() || !rmStagingMap.isEmpty()) {
-            Main.exitWithError("You have uncommitted changes.");
-        }
-        if (!givenBranchFile.exists()) {
-            Main.exitWithError("A branch with that name does not exist.");
+    private static HashMap<String, String> idsByName(
+            TreeMap<String, Blob> files) {
+        HashMap<String, String> ids = new HashMap<>();
+        for (Map.Entry<String, Blob> entry : files.entrySet()) {
+            ids.put(entry.getValue().getName(), entry.getKey());
         }
-        if (getLastCommitHash().equals(Utils
-                .sha1(Utils.serialize(splitCommit)))) {
-            checkoutThree(branchName);
-            Main.exitWithError("Current branch fast-forwarded.");
+        return ids;
+    }
+
+    /**
+     * Index the blobs of a snapshot by file name.
+     *
+     * @param files files keyed by blob hash.
+     * @return the same blobs keyed by file name.
+     */
+    private TreeMap<String, Blob> blobsByName(TreeMap<String, Blob> files) {
+        TreeMap<String, Blob> named = new TreeMap<>();
+        for (Blob blob : files.values()) {
+            named.put(blob.getName(), blob);
         }
+        return named;
     }
 
 
     /**
-     * Checkout merge to the working directory.
+     * Replays the changes PICKHASH made to its first parent on top of
+     * ONTOHASH and saves the result as a new commit object. Branches,
+     * staging and the working directory are left alone.
      *
-     * @param branch the head branch now at the merged commit.
-     * @param allFiles all files that were processed in merge.
+     * @param pickHash commit whose changes are replayed.
+     * @param ontoHash commit the changes are applied to.
+     * @return hash of the new commit, or null if it would be empty.
      * @throws IOException
      */
-    private void checkoutMerged(String branch, TreeMap<String, String> allFiles)
+    private String replayCommit(String pickHash, String ontoHash)
             throws IOException {
-        File branchFile = Utils.join(BRANCHES, branch);
+        Commit pick = getCommit(pickHash);
+        Commit onto = getCommit(ontoHash);
+        MergeResult result = mergeTrees(
+                getCommit(pick.getParent()).getCommittedFiles(),
+                onto.getCommittedFiles(), pick.getCommittedFiles());
+        if (result.getFiles().equals(onto.getCommittedFiles())) {
+            return null;
+        }
+        if (result.hasConflicts()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        return writeCommit(new Commit(pick.getMessage(), ontoHash,
+                result.getFiles(), false));
+    }
 
 
-        String branchCommit = Utils.readContentsAsString(branchFile);
-        String branchPath = branchFile.getPath();
-        String headCommit = getHeadBranch();
+    /**
+     * Moves the current branch from commit FROMHASH to commit TOHASH,
+     * updating the working directory and clearing the staging area.
+     *
+     * @param fromHash commit the current branch points to.
+     * @param toHash commit the current branch is moved to.
+     * @throws IOException
+     */
+    private void moveHead(String fromHash, String toHash) throws IOException {
+        TreeMap<String, Blob> from = getCommit(fromHash).getCommittedFiles();
+        TreeMap<String, Blob> to = getCommit(toHash).getCommittedFiles();
+        checkUntrackedInTheWay(to);
+        writeRef(new File(getHeadBranch()), toHash);
+        updateWorkingTree(from, to);
+        clearStaging();
+        writeStaging();
+    }
 
 
-        TreeMap<String, Blob> filesAtBranch =
-                getCommit(branchCommit).getCommittedFiles();
-        Set<Map.Entry<String, Blob>> branchFileEntries =
-                filesAtBranch.entrySet();
+    /**
+     * Exits with an error if writing the files in TARGET would overwrite
+     * a file in the working directory that is not tracked.
+     *
+     * @param target files about to be written to the working directory.
+     */
+    private void checkUntrackedInTheWay(TreeMap<String, Blob> target) {
         ArrayList<String> untrackedFiles = getUntrackedFiles();
-
-
-        ArrayList<String> trackedFiles = getTrackedFiles();
-        Set<Map.Entry<String, String>> allFileEntries = allFiles.entrySet();
-        for (Map.Entry<String, String> files : allFileEntries) {
-            File aWorkingFile = Utils.join(CWD, files.getKey());
-            if (aWorkingFile.exists()) {
-                aWorkingFile.delete();
+        for (Blob blob : target.values()) {
+            if (untrackedFiles.contains(blob.getName())) {
+                Main.exitWithError("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
             }
         }
-
-        for (Map.Entry<String, Blob> file : branchFileEntries) {
-            File aFile = Utils.join(CWD, file.getValue().getName());
-            aFile.createNewFile();
-            Utils.writeContents(aFile, file.getValue().getFileContents());
-        }
-
-        clearStaging();
-        writeStaging();
-
-        Utils.writeContents(head, branchFile.getAbsolutePath());
-        writeStaging();
     }
 
 
     /**
-     * Commit the state after the merge occures.
+     * Brings the working directory from snapshot FROM to snapshot TO.
+     * Files tracked in FROM but absent in TO are deleted, and every file
+     * in TO is written. Paths outside the sparse-checkout cone are left
+     * alone.
      *
-     * @param mergedFiles resulting files after merge.
-     * @param branch branch name.
-     * @param allFiles all files relevant in the merging.
+     * @param from files currently checked out.
+     * @param to files to check out.
      * @throws IOException
      */
-    private void commitMerge(TreeMap<String, Blob> mergedFiles,
-                             String branch,
-                             TreeMap<String, String> allFiles)
+    private void updateWorkingTree(TreeMap<String, Blob> from,
+                                   TreeMap<String, Blob> to)
             throws IOException {
-        File branchFile = Utils.join(BRANCHES, branch);
-        File currentBranchFile = Utils.join(BRANCHES, getHeadBranch());
-        String currentCommit = getLastCommitHash();
-        String branchCommit = Utils.readContentsAsString(branchFile);
-        String message = "Merged " + branch + " into "
-                + currentBranchFile.getName() + ".";
-        MergeCommit mergeCommit = new MergeCommit(message, currentCommit,
-                branchCommit, mergedFiles);
-        ArrayList<String> untrackedFiles = getUntrackedFiles();
-        Set<Map.Entry<String, Blob>> mergeEntries = mergedFiles.entrySet();
-        for (Map.Entry<String, Blob> bFile : mergeEntries) {
-            for (String untrackedFile : untrackedFiles) {
-                if (untrackedFile.equals(bFile.getValue().getName())) {
-                    Main.exitWithError("There is an untracked file in the"
-                            + " way; delete it, "
-                            + "or add and commit it first.");
-                }
+        SparseCheckout cone = sparseCone();
+        TreeMap<String, Blob> toByName = blobsByName(to);
+        for (Blob blob : from.values()) {
+            if (!toByName.containsKey(blob.getName())
+                    && cone.contains(blob.getName())) {
+                Utils.join(CWD, blob.getName()).delete();
+            }
+        }
+        for (Blob blob : to.values()) {
+            if (cone.contains(blob.getName())) {
+                writeWorkingFile(blob);
             }
         }
-        persistCommit(mergeCommit);
-        checkoutMerged((new File(getHeadBranch())).getName(), allFiles);
     }
 
 
     /**
-     * Addresses merge conflicts by writing both versions of
-     * conflicted files and notation into conflicted file.
-     *
-     *      <<<<<<< HEAD
-     *      * contents of file in current branch *
-     *      =======
-     *      * contents of file in given branch *
-     *      >>>>>>>
+     * Writes BLOB to the working directory, creating any directories
+     * its name requires.
      *
-     * @param currentFile conflicted file in current commit
-     * @param givenFile conflicted file in given commit
-     * @return file with addressed merge conflict
+     * @param blob file to write.
+     * @throws IOException
      */
-    private Blob mergeConflictFile(Blob currentFile, Blob givenFile) {
-        String fileName = currentFile.getName();
-        String currentFileContents;
-        String givenFileContents;
-        if (currentFile == null) {
-            currentFileContents = null;
-        } else {
-            currentFileContents = currentFile.getFileContents();
+    private void writeWorkingFile(Blob blob) throws IOException {
+        File aFile = Utils.join(CWD, blob.getName());
+        aFile.getParentFile().mkdirs();
+        aFile.createNewFile();
+        Utils.writeContents(aFile, blob.getFileContents());
+    }
+
+
+    /**
+     * @return the sparse-checkout cone of this working directory.
+     */
+    private SparseCheckout sparseCone() {
+        return new SparseCheckout(SPARSE_CHECKOUT);
+    }
+
+
+    /**
+     * @return the commit-graph of this repository.
+     */
+    private CommitGraph getCommitGraph() {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(COMMIT_GRAPH);
         }
-        if (givenFile == null) {
-            givenFileContents = "";
-        } else {
-            givenFileContents = givenFile.getFileContents();
+        return commitGraph;
+    }
+
+    /**
+     * @return the changed-path filters of this repository.
+     */
+    private ChangedPaths getChangedPaths() {
+        if (changedPaths == null) {
+            changedPaths = new ChangedPaths(CHANGED_PATHS, getCommitGraph());
         }
-        String mergeContent = "<<<<<<< HEAD\n" + currentFileContents
-                + "=======\n" + givenFileContents + ">>>>>>>\n";
-        return new Blob(fileName, mergeContent);
+        return changedPaths;
     }
 
     /**
-     * Get latest common ancestor of commits; the "split point".
+     * Return whether the commit at POS changed TARGET or a file under
+     * it, asking its changed-path filter before comparing snapshots.
      *
-     * @param current current branch.
-     * @param givenBranchFile given branch as a file.
-     * @return the splitpoint commit.
+     * @param pos a position in the commit-graph.
+     * @param target a normalized path.
+     * @return true if TARGET changed in that commit.
      */
-    private Commit getSplitPoint(Commit current, File givenBranchFile) {
-        if (!givenBranchFile.exists()) {
-            Main.exitWithError("A branch with that name does not exist.");
+    private boolean touches(int pos, String target) {
+        CommitGraph graph = getCommitGraph();
+        ChangedPaths changedPaths = getChangedPaths();
+        BloomFilter filter = changedPaths.get(pos);
+        if (filter != null && !filter.mightContain(target)) {
+            return false;
+        }
+        Set<String> changed = changedPaths(getCommit(graph.hash(pos)));
+        if (filter == null) {
+            changedPaths.put(pos, changed, bloomFalsePositiveRate());
+        }
+        return changed.contains(target);
+    }
+
+    /**
+     * Return the commit-graph positions log starts from: the head of
+     * every branch with --all, the given branches or commits, or else the
+     * current commit.
+     *
+     * @param options options of log.
+     * @return positions of the starting commits.
+     */
+    private List<Integer> logTips(LogOptions options) {
+        ArrayList<String> hashes = new ArrayList<>();
+        if (options.isAll()) {
+            hashes.addAll(getRefs().all().values());
         }
-        File commitFile = Utils.join(COMMITS,
-                Utils.readContentsAsString(givenBranchFile));
-        Commit given = Utils.readObject(commitFile, Commit.class);
-        String currentHash = Utils.sha1(Utils.serialize(current));
-        String givenHash = Utils.sha1(Utils.serialize(given));
-        ArrayList<String> currentAncestors = bfsCommit(current);
-        ArrayList<String> givenAncestors = bfsCommit(given);
-        String splitHash = "";
-        boolean found = false;
-        for (String currentCommitAncestor : currentAncestors) {
-            for (String givenCommitAncestor : givenAncestors) {
-                if (currentCommitAncestor.equals(givenCommitAncestor)) {
-                    splitHash = currentCommitAncestor;
-                    found = true;
-                }
-                if (givenHash.equals(getLastCommitHash())) {
-                    Main.exitWithError("Cannot merge a branch with itself.");
-                } else if (currentCommitAncestor.equals(givenHash)) {
-                    Main.exitWithError("Given branch is an ancestor of "
-                            + "the current branch.");
-                }
+        for (String rev : options.getRevs()) {
+            hashes.add(resolveRev(rev));
+        }
+        if (hashes.isEmpty()) {
+            hashes.add(getLastCommitHash());
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (String hash : hashes) {
+            result.add(graphPosition(hash));
+        }
+        return result;
+    }
+
+    /**
+     * @param pos a position in the commit-graph.
+     * @return ids of POS and its first-parent ancestors, newest first.
+     */
+    private Iterator<String> firstParents(int pos) {
+        CommitGraph graph = getCommitGraph();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return _next != CommitGraph.NONE;
             }
-            if (found) {
-                break;
+
+            @Override
+            public String next() {
+                String hash = graph.hash(_next);
+                _next = graph.parent(_next);
+                return hash;
+            }
+
+            /** Position of the next commit. */
+            private int _next = pos;
+        };
+    }
+
+    /**
+     * @param pos a position in the commit-graph.
+     * @return ids of the parents of the commit at POS.
+     */
+    private String[] parentHashes(int pos) {
+        CommitGraph graph = getCommitGraph();
+        ArrayList<String> result = new ArrayList<>();
+        for (int parent : new int[] {graph.parent(pos),
+                                     graph.secondParent(pos)}) {
+            if (parent != CommitGraph.NONE) {
+                result.add(graph.hash(parent));
             }
         }
-        if (splitHash.equals("")) {
-            return null;
-        } else {
-            return getCommit(splitHash);
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * @return a buffered writer to standard output that, unlike
+     *         System.out, reports failed writes.
+     */
+    private static Writer stdout() {
+        return new BufferedWriter(new OutputStreamWriter(
+                standardOutput()), STDOUT_BUFFER);
+    }
+
+    /**
+     * @return standard output as a stream of bytes, or the client's
+     *         connection while the daemon runs a command.
+     */
+    private static OutputStream standardOutput() {
+        OutputStream client = Daemon.output();
+        return client != null ? client
+                : new FileOutputStream(FileDescriptor.out);
+    }
+
+    /**
+     * @return the modification time and length of each file whose
+     *         contents are cached between daemon commands.
+     */
+    private static long[] cacheStamp() {
+        File[] files = {PACKED_REFS, CONFIG, BITMAPS, CHANGED_PATHS};
+        long[] stamp = new long[2 * files.length];
+        for (int i = 0; i < files.length; i += 1) {
+            stamp[2 * i] = files[i].lastModified();
+            stamp[2 * i + 1] = files[i].length();
+        }
+        return stamp;
+    }
+
+    /**
+     * Return the message index, first building it from every commit if
+     * it has never been built.
+     *
+     * @return the message index of this repository.
+     */
+    private MessageIndex getMessageIndex() {
+        MessageIndex index = new MessageIndex(MESSAGE_INDEX, MESSAGE_JOURNAL);
+        if (!index.isBuilt()) {
+            LinkedHashMap<String, String> messages = new LinkedHashMap<>();
+            new CommitScanner(COMMITS).scan((id, commit) -> new String[] {
+                id, commit.getMessage()
+            }, entry -> messages.put(entry[0], entry[1]) == null);
+            index.rebuild(messages);
+        }
+        return index;
+    }
+
+    /**
+     * @return the settings of this repository.
+     */
+    private Config getConfig() {
+        if (config == null) {
+            config = new Config(CONFIG);
         }
+        return config;
     }
 
+    /**
+     * @return the configured false-positive rate of new changed-path
+     *         filters.
+     */
+    private double bloomFalsePositiveRate() {
+        return getConfig().getDouble(Config.BLOOM_FALSE_POSITIVE_RATE,
+                ChangedPaths.DEFAULT_FALSE_POSITIVE_RATE);
+    }
 
     /**
-     * Runs breadth first search on commits.
+     * Return the paths COMMIT changed relative to its first parent, with
+     * their directories.
      *
-     * @param node root commit.
-     * @return list of commit hashes in BFS traversal order.
+     * @param commit a commit.
+     * @return changed files and directories.
      */
-    private ArrayList<String> bfsCommit(Commit node) {
-        ArrayList<String> orderedFiles = new ArrayList<>();
-        Queue<String> q = new LinkedList<>();
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS);
-        TreeMap<String, Boolean> visited = new TreeMap<String, Boolean>();
-        for (String commit : allCommits) {
-            visited.put(commit, false);
-        }
-
-        String commitHash = Utils.sha1(Utils.serialize(node));
-        q.add(commitHash);
-
-        while (q.size() != 0) {
-            commitHash = q.poll();
-            node = getCommit(commitHash);
-            orderedFiles.add(commitHash);
-            if (!visited.get(commitHash)) {
-                if (node instanceof MergeCommit) {
-                    String parentHash = node.getParent();
-                    if (parentHash != "") {
-                        visited.put(commitHash, true);
-                        q.add(parentHash);
-                    }
-                    String secondParentHash =
-                            ((MergeCommit) node).getSecondParent();
-                    if (secondParentHash != "") {
-                        visited.put(commitHash, true);
-                        q.add(secondParentHash);
-                    }
-                } else {
-                    if (node.getParent() != "") {
-                        visited.put(commitHash, true);
-                        q.add(node.getParent());
-                    }
-                }
-            }
+    private Set<String> changedPaths(Commit commit) {
+        TreeMap<String, Blob> parentFiles = commit.getParent().equals("")
+                ? new TreeMap<>()
+                : getCommit(commit.getParent()).getCommittedFiles();
+        return ChangedPaths.changed(commit.getCommittedFiles(), parentFiles);
+    }
+
+    /**
+     * @return the branches of this repository.
+     */
+    private Refs getRefs() {
+        if (refs == null) {
+            refs = new Refs(BRANCHES, PACKED_REFS);
+        }
+        return refs;
+    }
+
+    /**
+     * @return the reachability bitmaps of this repository.
+     */
+    private Reachability getReachability() {
+        if (reachability == null) {
+            reachability = new Reachability(BITMAPS, getCommitGraph());
         }
-        return orderedFiles;
+        return reachability;
+    }
+
+    /**
+     * Return the commit-graph position of commit HASH, adding it and
+     * any ancestors the graph is missing.
+     *
+     * @param hash a commit hash.
+     * @return position of HASH in the commit-graph.
+     */
+    private int graphPosition(String hash) {
+        return getCommitGraph().ensure(hash, this::getCommit);
     }
 
     /**
@@ -1372,11 +3032,11 @@ public class Gitlet {
     private void checkoutThree(String branch) throws IOException {
         File branchFile = Utils.join(BRANCHES, branch);
 
-        if (!branchFile.exists()) {
+        String branchCommit = getRefs().get(branch);
+        if (branchCommit == null) {
             Main.exitWithError("No such branch exists.");
         }
 
-        String branchCommit = Utils.readContentsAsString(branchFile);
         String branchPath = branchFile.getPath();
         String headCommit = getHeadBranch();
 
@@ -1386,37 +3046,27 @@ public class Gitlet {
 
         TreeMap<String, Blob> filesAtBranch =
                 getCommit(branchCommit).getCommittedFiles();
-        Set<Map.Entry<String, Blob>> branchFileEntries =
-                filesAtBranch.entrySet();
-        ArrayList<String> untrackedFiles = getUntrackedFiles();
-
-        for (Map.Entry<String, Blob> bFile : branchFileEntries) {
-            for (String untrackedFile : untrackedFiles) {
-                if (untrackedFile.equals(bFile.getValue().getName())) {
-                    Main.exitWithError("There is an untracked file "
-                            + "in the way; delete it, "
-                            + "or add and commit it first.");
-                }
+        checkUntrackedInTheWay(filesAtBranch);
+        File lock = lockWorktrees();
+        boolean free;
+        try {
+            free = !checkedOutElsewhere(branchFile);
+            if (free) {
+                updateWorkingTree(getLastCommit().getCommittedFiles(),
+                        filesAtBranch);
+
+                clearStaging();
+                writeStaging();
+
+                Utils.writeContents(head, branchFile.getAbsolutePath());
             }
+        } finally {
+            lock.delete();
         }
-
-        ArrayList<String> trackedFiles = getTrackedFiles();
-
-        for (String name : trackedFiles) {
-            File aWorkingFile = Utils.join(CWD, name);
-            aWorkingFile.delete();
-        }
-
-        for (Map.Entry<String, Blob> file : branchFileEntries) {
-            File aFile = Utils.join(CWD, file.getValue().getName());
-            aFile.createNewFile();
-            Utils.writeContents(aFile, file.getValue().getFileContents());
+        if (!free) {
+            Main.exitWithError("That branch is checked out in another "
+                    + "worktree.");
         }
-
-        clearStaging();
-        writeStaging();
-
-        Utils.writeContents(head, branchFile.getAbsolutePath());
     }
 
 
@@ -1427,11 +3077,95 @@ public class Gitlet {
     /** Directory that persists entire program .gitlet. */
     private static final File GIT = Utils.join(CWD, ".gitlet");
 
+    /** Directory holding what all worktrees share; GIT unless this
+     *  working directory was made by worktree add. */
+    private static final File COMMON = commonDir(GIT);
+
     /** Directory that holds branches in .gitlet/Branches. */
-    private static final File BRANCHES = Utils.join(GIT, "Branches");
+    private static final File BRANCHES = Utils.join(COMMON, "Branches");
+
+    /** Branches packed out of BRANCHES, in .gitlet/packed-refs. */
+    private static final File PACKED_REFS = Utils.join(COMMON, "packed-refs");
+
+    /** Loose branch files beyond which creating a branch packs them. */
+    private static final int LOOSE_REFS_LIMIT = 256;
 
     /** Directory that holds commits in .gitlet/Commits. */
-    private static final File COMMITS = Utils.join(GIT, "Commits");
+    private static final File COMMITS = Utils.join(COMMON, "Commits");
+
+    /** Commit-graph file in .gitlet/graph/commits. */
+    private static final File COMMIT_GRAPH =
+            Utils.join(COMMON, "graph", "commits");
+
+    /** Changed-path Bloom filters in .gitlet/graph/paths. */
+    private static final File CHANGED_PATHS =
+            Utils.join(COMMON, "graph", "paths");
+
+    /** Commit message index in .gitlet/index/messages. */
+    private static final File MESSAGE_INDEX =
+            Utils.join(COMMON, "index", "messages");
+
+    /** Commits not yet in MESSAGE_INDEX, in .gitlet/index/messages.log. */
+    private static final File MESSAGE_JOURNAL =
+            Utils.join(COMMON, "index", "messages.log");
+
+    /** Header of every commit in .gitlet/index/metadata. */
+    private static final File METADATA_LOG =
+            Utils.join(COMMON, "index", "metadata");
+
+    /** State of a bisection in progress in this working directory. */
+    private static final File BISECT = Utils.join(GIT, "bisect");
+
+    /** HEAD branch when the bisection started. */
+    private static final File BISECT_START = Utils.join(BISECT, "start");
+
+    /** Commit checked out while bisecting; HEAD names this file. */
+    private static final File BISECT_HEAD = Utils.join(BISECT, "head");
+
+    /** The commit marked bad. */
+    private static final File BISECT_BAD = Utils.join(BISECT, "bad");
+
+    /** Commits marked good, one per line. */
+    private static final File BISECT_GOOD = Utils.join(BISECT, "good");
+
+    /** Commits marked skipped, one per line. */
+    private static final File BISECT_SKIP = Utils.join(BISECT, "skip");
+
+    /** Saved blame results, one file per commit and path. */
+    private static final File BLAME_CACHE =
+            Utils.join(COMMON, "cache", "blame");
+
+    /** Characters of a commit id shown by branch -v. */
+    private static final int BRANCH_ABBREV = 7;
+
+    /** Characters of a commit id shown by blame. */
+    private static final int BLAME_ABBREV = 8;
+
+    /** Commits read ahead of a history walk. */
+    private static final int PREFETCH_DEPTH = 8;
+
+    /** Characters buffered before output is written. */
+    private static final int STDOUT_BUFFER = 1 << 16;
+
+    /** Files diff compares ahead of the one being written, per thread. */
+    private static final int DIFF_WINDOW = 2;
+
+    /** Repository settings in .gitlet/config. */
+    private static final File CONFIG = Utils.join(COMMON, "config");
+
+    /** Reachability bitmaps in .gitlet/graph/bitmaps. */
+    private static final File BITMAPS = Utils.join(COMMON, "graph", "bitmaps");
+
+    /** Directory registering the other worktrees in .gitlet/worktrees. */
+    private static final File WORKTREES = Utils.join(COMMON, "worktrees");
+
+    /** Suffix of the lock file guarding a branch update. */
+    private static final String LOCK_SUFFIX = Refs.LOCK_SUFFIX;
+
+    /** Lock held while a worktree checks out a branch, in
+     *  .gitlet/worktrees.lock. */
+    private static final File WORKTREES_LOCK =
+            Utils.join(COMMON, "worktrees" + LOCK_SUFFIX);
 
     /** File that address to the head branch .gitlet/HEAD. */
     private static File head = Utils.join(GIT, "HEAD");
@@ -1440,6 +3174,10 @@ public class Gitlet {
     private static final File MASTER =
             Utils.join(BRANCHES, "master");
 
+    /** Sparse-checkout patterns in .gitlet/sparse-checkout. */
+    private static final File SPARSE_CHECKOUT =
+            Utils.join(GIT, "sparse-checkout");
+
     /** Directory of files staged for commit in .gitlet/staging. */
     private static final File STAGING = Utils.join(GIT, "staging");
 
@@ -1454,4 +3192,22 @@ public class Gitlet {
 
     /** TreeMap of files that are staged for removal. */
     private static TreeMap<String, Blob> rmStagingMap = new TreeMap<>();
+
+    /** Commit-graph, opened on first use. */
+    private static CommitGraph commitGraph;
+
+    /** Branches, loaded on first use. */
+    private static Refs refs;
+
+    /** Reachability bitmaps, loaded on first use. */
+    private static Reachability reachability;
+
+    /** Changed-path filters, loaded on first use. */
+    private static ChangedPaths changedPaths;
+
+    /** Repository settings, loaded on first use. */
+    private static Config config;
+
+    /** State of the cached files when the daemon's last command ended. */
+    private static long[] cacheStamp;
 }
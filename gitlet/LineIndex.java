@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The lines of a text held as bytes: where each line starts and a
+ *  64-bit hash of it, in two flat arrays, so a file can be compared line
+ *  by line without making a String per line. Newlines are found and
+ *  lines hashed eight bytes at a time, reading the bytes as longs and
+ *  testing all eight lanes with carry-free bit arithmetic (SWAR), with
+ *  a byte loop for the tail. Each line includes its newline, so a last
+ *  line without one differs from the same text with one.
+ *  @author Yusuf Quddus
+ */
+class LineIndex {
+
+    /**
+     * Index the lines of DATA.
+     *
+     * @param data text to index; not copied, and must not change.
+     */
+    LineIndex(byte[] data) {
+        _data = data;
+        int[] starts = new int[16];
+        int n = 0;
+        starts[n++] = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= data.length; i += Long.BYTES) {
+            long word = (long) LONGS.get(data, i) ^ NEWLINES;
+            long found = ~(((word & LOW_SEVEN) + LOW_SEVEN) | word
+                           | LOW_SEVEN);
+            while (found != 0) {
+                if (n == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * n);
+                }
+                starts[n++] = i + (Long.numberOfTrailingZeros(found) >>> 3) + 1;
+                found &= found - 1;
+            }
+        }
+        for (; i < data.length; i += 1) {
+            if (data[i] == '\n') {
+                if (n == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * n);
+                }
+                starts[n++] = i + 1;
+            }
+        }
+        if (starts[n - 1] != data.length) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, n + 1);
+            }
+            starts[n++] = data.length;
+        }
+        _starts = Arrays.copyOf(starts, n);
+        _hashes = new long[n - 1];
+        for (int k = 0; k < _hashes.length; k += 1) {
+            _hashes[k] = hash(data, _starts[k], _starts[k + 1]);
+        }
+    }
+
+    /**
+     * @return the number of lines
+     */
+    int size() {
+        return _hashes.length;
+    }
+
+    /**
+     * @param k a line number, from 0.
+     * @return the hash of line K, including its newline
+     */
+    long hash(int k) {
+        return _hashes[k];
+    }
+
+    /**
+     * @param k a line number, from 0.
+     * @param other another index, possibly this one.
+     * @param j a line number of OTHER.
+     * @return true if line K has the same bytes as line J of OTHER
+     */
+    boolean equal(int k, LineIndex other, int j) {
+        return _hashes[k] == other._hashes[j]
+            && Arrays.equals(_data, _starts[k], _starts[k + 1],
+                             other._data, other._starts[j],
+                             other._starts[j + 1]);
+    }
+
+    /**
+     * @param k a line number, from 0.
+     * @return line K decoded as UTF-8, without its newline
+     */
+    String line(int k) {
+        int end = _starts[k + 1];
+        if (end > _starts[k] && _data[end - 1] == '\n') {
+            end -= 1;
+        }
+        return new String(_data, _starts[k], end - _starts[k],
+                          StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the lines as a list that decodes each one when it is read
+     */
+    List<String> asList() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int k) {
+                return line(k);
+            }
+
+            @Override
+            public int size() {
+                return LineIndex.this.size();
+            }
+        };
+    }
+
+    /** Return a 64-bit hash of DATA[FROM .. TO - 1], mixing in eight
+     *  bytes at a time. */
+    private static long hash(byte[] data, int from, int to) {
+        long h = SEED ^ (to - from);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            h = Long.rotateLeft(h ^ (long) LONGS.get(data, i) * MULTIPLIER,
+                                31) * MULTIPLIER;
+        }
+        long tail = 0;
+        for (int shift = 0; i < to; i += 1, shift += Byte.SIZE) {
+            tail |= (data[i] & 0xffL) << shift;
+        }
+        h ^= tail * MULTIPLIER;
+        h ^= h >>> 33;
+        h *= MULTIPLIER;
+        return h ^ (h >>> 29);
+    }
+
+    /** Reads eight bytes of a byte[] as one long. */
+    private static final VarHandle LONGS = MethodHandles
+        .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** A newline in every byte. */
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+
+    /** The low seven bits of every byte. */
+    private static final long LOW_SEVEN = 0x7f7f7f7f7f7f7f7fL;
+
+    /** Odd constants for hashing. */
+    private static final long SEED = 0x27d4eb2f165667c5L,
+        MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** The text. */
+    private final byte[] _data;
+
+    /** Start of each line, then the end of the text. */
+    private final int[] _starts;
+
+    /** Hash of each line. */
+    private final long[] _hashes;
+}
@@ -0,0 +1,260 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Options of the log command: where to start, how many commits to
+ *  show, which period and path to limit them to, and how to print each
+ *  one. A format
+ *  string may use these placeholders:
+ *      %H  commit id               %h  abbreviated commit id
+ *      %P  parent ids              %p  abbreviated parent ids
+ *      %ad commit date             %at commit date in epoch seconds
+ *      %s  first line of message   %B  whole message
+ *      %n  newline                 %%  a percent sign
+ *  @author Yusuf Quddus
+ */
+class LogOptions {
+
+    /**
+     * Parse the log operands ARGS[FROM ..]:
+     *      -n N, -N            show at most N commits
+     *      --oneline           abbreviated id and first line of message
+     *      --since=DATE        only commits made at or after DATE
+     *      --until=DATE        only commits made at or before DATE
+     *      --format=FORMAT     print each commit with FORMAT
+     *      --all               start from the head of every branch
+     *      REV...              start from these branches or commits
+     *      -- PATH             only commits that changed PATH
+     * A DATE is yyyy-MM-dd, yyyy-MM-ddTHH:mm[:ss] in local time, or
+     * "N units ago" for units of seconds up to weeks.
+     *
+     * @param args command-line arguments.
+     * @param from index of the first operand.
+     * @return the options, or null if the operands are not valid
+     */
+    static LogOptions parse(String[] args, int from) {
+        LogOptions options = new LogOptions();
+        try {
+            for (int i = from; i < args.length; i += 1) {
+                String arg = args[i];
+                if (arg.equals("--") && i == args.length - 2) {
+                    options._path = args[i + 1];
+                    i += 1;
+                } else if (arg.equals("-n") && i + 1 < args.length) {
+                    options._limit = Integer.parseInt(args[i + 1]);
+                    i += 1;
+                } else if (arg.matches("-[0-9]+")) {
+                    options._limit = Integer.parseInt(arg.substring(1));
+                } else if (arg.equals("--all")) {
+                    options._all = true;
+                } else if (!arg.startsWith("-")) {
+                    options._revs.add(arg);
+                } else if (arg.equals("--oneline")) {
+                    options._format = ONELINE;
+                } else if (arg.startsWith("--format=")) {
+                    options._format = arg.substring("--format=".length());
+                } else if (arg.startsWith("--since=")) {
+                    options._since = parseDate(arg.substring(8));
+                } else if (arg.startsWith("--until=")) {
+                    options._until = parseDate(arg.substring(8));
+                } else {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            return null;
+        }
+        return options._limit < 0 ? null : options;
+    }
+
+    /**
+     * @return true if log starts from the head of every branch
+     */
+    boolean isAll() {
+        return _all;
+    }
+
+    /**
+     * @return branches or commit ids log starts from
+     */
+    List<String> getRevs() {
+        return _revs;
+    }
+
+    /**
+     * @return most commits to show, or Integer.MAX_VALUE
+     */
+    int getLimit() {
+        return _limit;
+    }
+
+    /**
+     * @return earliest commit time to show, in epoch seconds
+     */
+    long getSince() {
+        return _since;
+    }
+
+    /**
+     * @return latest commit time to show, in epoch seconds
+     */
+    long getUntil() {
+        return _until;
+    }
+
+    /**
+     * @return path to limit the history to, or null
+     */
+    String getPath() {
+        return _path;
+    }
+
+    /**
+     * @return true if printing a commit needs more than its id, parents
+     *         and epoch time, so the commit itself must be read
+     */
+    boolean needsCommit() {
+        return _format == null || _format.contains("%s")
+            || _format.contains("%B") || _format.contains("%ad");
+    }
+
+    /**
+     * Return the text printed for a commit.
+     *
+     * @param id the commit id.
+     * @param parents ids of its parents.
+     * @param epochSecond its time in seconds since the epoch.
+     * @param commit the commit, or null if needsCommit is false.
+     * @return the text to print, ending in a newline
+     */
+    String format(String id, String[] parents, long epochSecond,
+                  Commit commit) {
+        if (_format == null) {
+            return "===\ncommit " + id + "\nDate: " + commit.getTimestamp()
+                + "\n" + commit.getMessage() + "\n\n";
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < _format.length(); i += 1) {
+            char c = _format.charAt(i);
+            if (c != '%' || i + 1 == _format.length()) {
+                out.append(c);
+            } else if (_format.startsWith("ad", i + 1)) {
+                out.append(commit.getTimestamp());
+                i += 2;
+            } else if (_format.startsWith("at", i + 1)) {
+                out.append(epochSecond);
+                i += 2;
+            } else {
+                i += 1;
+                switch (_format.charAt(i)) {
+                case 'H':
+                    out.append(id);
+                    break;
+                case 'h':
+                    out.append(abbreviate(id));
+                    break;
+                case 'P':
+                    out.append(String.join(" ", parents));
+                    break;
+                case 'p':
+                    for (int k = 0; k < parents.length; k += 1) {
+                        out.append(k == 0 ? "" : " ")
+                            .append(abbreviate(parents[k]));
+                    }
+                    break;
+                case 's':
+                    out.append(commit.getMessage().split("\n", 2)[0]);
+                    break;
+                case 'B':
+                    out.append(commit.getMessage());
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case '%':
+                    out.append('%');
+                    break;
+                default:
+                    out.append('%').append(_format.charAt(i));
+                    break;
+                }
+            }
+        }
+        return out.append('\n').toString();
+    }
+
+    /** Return the epoch second that DATE names. */
+    private static long parseDate(String date) {
+        Matcher relative = RELATIVE.matcher(date.trim());
+        if (relative.matches()) {
+            long count = Long.parseLong(relative.group(1));
+            long unit;
+            switch (relative.group(2)) {
+            case "second":
+                unit = 1;
+                break;
+            case "minute":
+                unit = 60;
+                break;
+            case "hour":
+                unit = 60 * 60;
+                break;
+            case "day":
+                unit = 24 * 60 * 60;
+                break;
+            default:
+                unit = 7 * 24 * 60 * 60;
+                break;
+            }
+            return System.currentTimeMillis() / 1000 - count * unit;
+        } else if (date.contains("T")) {
+            return LocalDateTime.parse(date).atZone(ZoneId.systemDefault())
+                .toEpochSecond();
+        }
+        return LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault())
+            .toEpochSecond();
+    }
+
+    /** Return the abbreviated form of commit ID. */
+    private static String abbreviate(String id) {
+        return id.substring(0, Math.min(ABBREV_LENGTH, id.length()));
+    }
+
+    /** Format used by --oneline. */
+    private static final String ONELINE = "%h %s";
+
+    /** Characters in an abbreviated commit id. */
+    private static final int ABBREV_LENGTH = 7;
+
+    /** A relative date such as "2 weeks ago" or "3.days.ago". */
+    private static final Pattern RELATIVE = Pattern.compile(
+        "(\\d+)[ .](second|minute|hour|day|week)s?[ .]ago");
+
+    /** True if log starts from every branch. */
+    private boolean _all;
+
+    /** Branches or commit ids log starts from. */
+    private final ArrayList<String> _revs = new ArrayList<>();
+
+    /** Most commits to show. */
+    private int _limit = Integer.MAX_VALUE;
+
+    /** Earliest commit time to show, in epoch seconds. */
+    private long _since = Long.MIN_VALUE;
+
+    /** Latest commit time to show, in epoch seconds. */
+    private long _until = Long.MAX_VALUE;
+
+    /** Path to limit the history to, or null. */
+    private String _path;
+
+    /** Format of each commit, or null for the standard one. */
+    private String _format;
+}
@@ -2,6 +2,9 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
@@ -19,8 +22,8 @@ public class Main {
             GITLET.init();
             break;
         case "add":
-            checkInput(args.length, 2);
-            GITLET.add(args[1]);
+            checkInput(Math.min(args.length, 2), 2);
+            GITLET.add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "rm":
             checkInput(args.length, 2);
@@ -31,27 +34,34 @@ public class Main {
             GITLET.commit(args[1]);
             break;
         case "log":
-            checkInput(args.length, 1);
-            GITLET.log();
+            checkInputLog(args);
             break;
         case "global-log":
-            checkInput(args.length, 1);
-            GITLET.globalLog();
+            if (args.length == 2 && args[1].equals("--scan")) {
+                checkInput(args.length, 2);
+                GITLET.globalLog(true);
+            } else {
+                checkInput(args.length, 1);
+                GITLET.globalLog(false);
+            }
             break;
         case "status":
             checkInput(args.length, 1);
             GITLET.status();
             break;
         case "find":
-            checkInput(args.length, 2);
-            GITLET.find(args[1]);
+            checkInputFind(args);
             break;
         case "checkout":
             checkInputCheckout(args);
             break;
         case "branch":
             checkInput(args.length, 2);
-            GITLET.branch(args[1]);
+            if (args[1].equals("-v")) {
+                GITLET.branchVerbose();
+            } else {
+                GITLET.branch(args[1]);
+            }
             break;
         case "rm-branch":
             checkInput(args.length, 2);
@@ -65,6 +75,48 @@ public class Main {
             checkInput(args.length, 2);
             GITLET.merge(args[1]);
             break;
+        case "cherry-pick":
+            checkInput(args.length, 2);
+            GITLET.cherryPick(args[1]);
+            break;
+        case "rebase":
+            checkInput(args.length, 2);
+            GITLET.rebase(args[1]);
+            break;
+        case "config":
+            checkInputConfig(args);
+            break;
+        case "repack":
+            checkInput(args.length, 1);
+            GITLET.repack();
+            break;
+        case "rev-list":
+            checkInput(Math.min(args.length, 2), 2);
+            GITLET.revList(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "blame":
+            checkInput(args.length, 2);
+            GITLET.blame(args[1]);
+            break;
+        case "bisect":
+            checkInputBisect(args);
+            break;
+        case "archive":
+            checkInputArchive(args);
+            break;
+        case "diff":
+            checkInputDiff(args);
+            break;
+        case "worktree":
+            checkInputWorktree(args);
+            break;
+        case "daemon":
+            checkInputDaemon(args);
+            break;
+        case "sparse-checkout":
+            checkInputSparseCheckout(args);
+            GITLET.sparseCheckout(Arrays.copyOfRange(args, 1, args.length));
+            break;
         default:
             exitWithError("No command with that name exists.");
         }
@@ -73,7 +125,8 @@ public class Main {
 
 
     /**
-     * Prints out MESSAGE and exits with code 0.
+     * Prints out MESSAGE and exits with code 0. A command run by the
+     * daemon ends instead, by throwing Daemon.Exit.
      *
      * @param message error message to print
      */
@@ -81,6 +134,9 @@ public class Main {
         if (message != null && !message.equals("")) {
             System.out.println(message);
         }
+        if (Daemon.serving()) {
+            throw new Daemon.Exit();
+        }
         System.exit(0);
     }
 
@@ -141,6 +197,208 @@ public class Main {
     }
 
 
+    /**
+     * Checks input for find command and runs it: a message, optionally
+     * preceded by --contains or --regex, all optionally preceded by
+     * --scan.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputFind(String[] args) {
+        boolean scan = args.length > 2 && args[1].equals("--scan");
+        String[] rest = scan ? Arrays.copyOfRange(args, 1, args.length)
+                : args;
+        if (rest.length == 3 && (rest[1].equals("--contains")
+                || rest[1].equals("--regex"))) {
+            checkInput(rest.length, 3);
+            GITLET.find(rest[1], rest[2], scan);
+        } else {
+            checkInput(rest.length, 2);
+            GITLET.find(null, rest[1], scan);
+        }
+    }
+
+
+    /**
+     * Checks input for config command and runs it: a key, optionally
+     * followed by a new value.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputConfig(String[] args) {
+        if (args.length == 3) {
+            checkInput(args.length, 3);
+            GITLET.config(args[1], args[2]);
+        } else {
+            checkInput(args.length, 2);
+            GITLET.config(args[1], null);
+        }
+    }
+
+
+    /**
+     * Checks input for log command and runs it; see LogOptions for the
+     * operands it takes.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputLog(String[] args) {
+        LogOptions options = LogOptions.parse(args, 1);
+        checkInput(options == null ? -1 : 1, 1);
+        GITLET.log(options);
+    }
+
+
+    /**
+     * Checks input for bisect command and runs it: start or reset, or
+     * bad, good or skip optionally followed by a branch or commit id.
+     *
+     * @param args arguments into the program.
+     * @throws IOException
+     */
+    private static void checkInputBisect(String[] args) throws IOException {
+        if (args.length > 1 && (args[1].equals("start")
+                || args[1].equals("reset"))) {
+            checkInput(args.length, 2);
+            GITLET.bisect(args[1], null);
+        } else if (args.length > 1 && (args[1].equals("bad")
+                || args[1].equals("good") || args[1].equals("skip"))) {
+            checkInput(args.length == 2 ? 3 : args.length, 3);
+            GITLET.bisect(args[1], args.length == 3 ? args[2] : null);
+        } else {
+            checkInput(args.length, -1);
+        }
+    }
+
+
+    /**
+     * Checks input for archive command and runs it: a branch or commit
+     * id, then optionally --format=tar or --format=zip and -o with a
+     * file. Without --format the format is zip if the file name ends in
+     * .zip and tar otherwise.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputArchive(String[] args) {
+        String rev = null, format = null, output = null;
+        boolean valid = true;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--format=tar")
+                    || args[i].equals("--format=zip")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[i + 1];
+                i += 1;
+            } else if (!args[i].startsWith("-") && rev == null) {
+                rev = args[i];
+            } else {
+                valid = false;
+            }
+        }
+        checkInput(valid && rev != null ? 1 : -1, 1);
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip"
+                    : "tar";
+        }
+        GITLET.archive(rev, format, output);
+    }
+
+
+    /**
+     * Checks input for daemon command and runs it: with no operands,
+     * serves commands from Client on .gitlet/daemon.sock until stopped;
+     * with --stop, stops the daemon that is running.
+     *
+     * @param args arguments into the program.
+     * @throws IOException
+     */
+    private static void checkInputDaemon(String[] args) throws IOException {
+        boolean stop = args.length == 2 && args[1].equals("--stop");
+        checkInput(stop ? 1 : args.length, 1);
+        if (Daemon.serving()) {
+            if (!stop) {
+                exitWithError("A gitlet daemon is already running.");
+            }
+            Daemon.stop();
+        } else if (!stop) {
+            Daemon.serve(Client.SOCKET);
+        } else if (Client.send(Client.SOCKET, args) < 0) {
+            exitWithError("No gitlet daemon is running.");
+        }
+    }
+
+
+    /**
+     * Checks input for diff command and runs it: optionally --stat or
+     * --name-only, at most two branches or commit ids, then optionally
+     * -- followed by paths.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputDiff(String[] args) {
+        String format = null;
+        ArrayList<String> revs = new ArrayList<>();
+        String[] paths = new String[0];
+        boolean valid = true;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--")) {
+                paths = Arrays.copyOfRange(args, i + 1, args.length);
+                for (int k = 0; k < paths.length; k += 1) {
+                    paths[k] = Paths.get(paths[k]).normalize().toString();
+                }
+                break;
+            } else if ((args[i].equals("--stat")
+                    || args[i].equals("--name-only")) && format == null) {
+                format = args[i];
+            } else if (args[i].startsWith("-")) {
+                valid = false;
+            } else {
+                revs.add(args[i]);
+            }
+        }
+        checkInput(valid && revs.size() <= 2 ? 1 : -1, 1);
+        GITLET.diff(format, revs.toArray(new String[0]), paths);
+    }
+
+
+    /**
+     * Checks input for sparse-checkout command: set takes at least one
+     * pattern, list and disable take none.
+     *
+     * @param args arguments into the program.
+     */
+    private static void checkInputSparseCheckout(String[] args) {
+        if (args.length < 2) {
+            checkInput(args.length, 2);
+        } else if (args[1].equals("set")) {
+            checkInput(Math.min(args.length, 3), 3);
+        } else if (args[1].equals("list") || args[1].equals("disable")) {
+            checkInput(args.length, 2);
+        } else {
+            exitWithError("Incorrect operands.");
+        }
+    }
+
+
+    /**
+     * Checks input for worktree command and runs it.
+     *
+     * @param args arguments into the program.
+     * @throws IOException
+     */
+    private static void checkInputWorktree(String[] args) throws IOException {
+        if (args.length > 1 && args[1].equals("add")) {
+            checkInput(args.length, 4);
+            GITLET.worktreeAdd(args[2], args[3]);
+        } else if (args.length > 1 && args[1].equals("list")) {
+            checkInput(args.length, 2);
+            GITLET.worktreeList();
+        } else {
+            checkInput(args.length, -1);
+        }
+    }
+
+
     /**
      * Checks input for checkout command.
      *
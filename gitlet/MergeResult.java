@@ -0,0 +1,50 @@
+package gitlet;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/** The outcome of merging three snapshots in memory: the files of the
+ *  merged tree and the names of the files left in conflict. Nothing in
+ *  the working directory or staging area is touched to produce one.
+ *  @author Yusuf Quddus
+ */
+public class MergeResult {
+
+    /**
+     * Constructor for a merge result.
+     *
+     * @param files merged files, keyed by blob hash.
+     * @param conflicts names of files merged with conflict markers.
+     */
+    MergeResult(TreeMap<String, Blob> files, List<String> conflicts) {
+        _files = files;
+        _conflicts = conflicts;
+    }
+
+    /**
+     * @return map of files in the merged tree
+     */
+    public TreeMap<String, Blob> getFiles() {
+        return _files;
+    }
+
+    /**
+     * @return names of conflicted files in lexical order
+     */
+    public List<String> getConflicts() {
+        return _conflicts;
+    }
+
+    /**
+     * @return true if any file was merged with conflict markers
+     */
+    public boolean hasConflicts() {
+        return !_conflicts.isEmpty();
+    }
+
+    /** Files in the merged tree. */
+    private TreeMap<String, Blob> _files;
+
+    /** Names of files in conflict. */
+    private List<String> _conflicts;
+}
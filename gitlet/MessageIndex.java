@@ -0,0 +1,562 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** An inverted index from commit messages to commit ids, so find does
+ *  not have to read every commit. The index file maps each term to the
+ *  sorted list of entries containing it. Terms are the trigrams of each
+ *  normalized message, which narrow substring and regular expression
+ *  queries, and a hash of the whole normalized message for exact ones.
+ *  Candidates are always checked against the real message.
+ *
+ *  The index file is memory-mapped and never read whole: a query
+ *  binary-searches the term table for its terms, intersects their
+ *  postings and reads the messages of only the entries left.
+ *
+ *  Commits add themselves to a journal beside the index, which is
+ *  cheap; the journal is folded into the index once it grows long.
+ *  Appending to the journal and folding it in both hold a lock on the
+ *  journal, so no entry journaled meanwhile is lost.
+ *
+ *  The index file is MAGIC, VERSION, the number of entries and the
+ *  number of terms. Then comes the term table, sorted by term, giving
+ *  each term with the offset and length of its postings; the offset of
+ *  each entry; the entries, each an id and message; and the postings,
+ *  each a sorted list of entry numbers. The journal is a sequence of id
+ *  and message pairs.
+ *  @author Yusuf Quddus
+ */
+class MessageIndex {
+
+    /**
+     * Open the index in FILE and load the entries journaled to JOURNAL.
+     * A long journal is folded into the index file, but only if that
+     * file exists: without it the journal misses the commits made before
+     * it was started, and only rebuild can make the index complete.
+     *
+     * @param file the index file, which need not exist.
+     * @param journal the journal, which need not exist.
+     */
+    MessageIndex(File file, File journal) {
+        _file = file;
+        _journal = journal;
+        _ids = new ArrayList<>();
+        _messages = new ArrayList<>();
+        _built = file.isFile();
+        if (_built) {
+            mapIndex();
+        }
+        if (journal.isFile()) {
+            readJournal(ByteBuffer.wrap(Utils.readContents(journal)),
+                        _ids, _messages);
+        }
+        if (_built && _ids.size() > COMPACT_THRESHOLD) {
+            compact(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Journal commit ID with MESSAGE without loading the index.
+     *
+     * @param journal the journal file.
+     * @param id a commit id.
+     * @param message its message.
+     */
+    static void record(File journal, String id, String message) {
+        journal.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Utils.writeString(out, id);
+            Utils.writeString(out, message);
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            FileLock lock = channel.lock();
+            try {
+                long end = channel.size();
+                while (buf.hasRemaining()) {
+                    channel.write(buf, end + buf.position());
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the index file exists; if not, rebuild must be
+     *         given every commit before queries are complete
+     */
+    boolean isBuilt() {
+        return _built;
+    }
+
+    /**
+     * Replace the index with one of MESSAGES, keyed by commit id, and
+     * of the entries in the journal and in any index file written
+     * meanwhile, and empty the journal.
+     *
+     * @param messages message of every commit.
+     */
+    void rebuild(Map<String, String> messages) {
+        compact(new LinkedHashMap<>(messages));
+    }
+
+    /**
+     * @param message a commit message.
+     * @return ids of the commits whose message is exactly MESSAGE
+     */
+    List<String> exact(String message) {
+        String normal = normalize(message);
+        long[] terms = normal.length() < 3 ? new long[0]
+            : new long[] {wholeTerm(normal)};
+        return select(terms, m -> m.equals(message));
+    }
+
+    /**
+     * @param text text to look for.
+     * @return ids of the commits whose message contains TEXT
+     */
+    List<String> contains(String text) {
+        return select(trigrams(normalize(text)), m -> m.contains(text));
+    }
+
+    /**
+     * @param pattern a regular expression.
+     * @return ids of the commits whose message PATTERN matches part of
+     */
+    List<String> matching(Pattern pattern) {
+        ArrayList<Long> required = new ArrayList<>();
+        for (String literal : requiredLiterals(pattern.pattern())) {
+            for (long term : trigrams(normalize(literal))) {
+                required.add(term);
+            }
+        }
+        long[] terms = required.stream().mapToLong(t -> t).toArray();
+        return select(terms, m -> pattern.matcher(m).find());
+    }
+
+    /** A test of a candidate message. */
+    private interface Check {
+        /** Return true if MESSAGE answers the query. */
+        boolean test(String message);
+    }
+
+    /** Return the ids of entries whose messages pass CHECK, looking only
+     *  at indexed entries holding every one of TERMS and at journaled
+     *  entries. Each id is listed once. */
+    private List<String> select(long[] terms, Check check) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        int[] candidates = null;
+        for (long term : terms) {
+            int[] postings = postings(term);
+            candidates = candidates == null ? postings
+                : intersect(candidates, postings);
+        }
+        if (candidates == null) {
+            candidates = new int[count()];
+            Arrays.setAll(candidates, i -> i);
+        }
+        for (int i : candidates) {
+            String[] entry = entry(i);
+            if (check.test(entry[1])) {
+                result.add(entry[0]);
+            }
+        }
+        for (int i = 0; i < _ids.size(); i += 1) {
+            if (check.test(_messages.get(i))) {
+                result.add(_ids.get(i));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the number of indexed entries. */
+    private int count() {
+        return _index == null ? 0 : _index.getInt(COUNT_OFFSET);
+    }
+
+    /** Return the number of indexed terms. */
+    private int termCount() {
+        return _index == null ? 0 : _index.getInt(TERMS_OFFSET);
+    }
+
+    /** Return the sorted numbers of the indexed entries holding TERM,
+     *  found by a binary search of the term table. */
+    private int[] postings(long term) {
+        int lo = 0, hi = termCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = HEADER + mid * TERM_SIZE;
+            int cmp = Long.compare(_index.getLong(at), term);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                int offset = _index.getInt(at + Long.BYTES);
+                int[] result = new int[_index.getInt(at + Long.BYTES
+                                                     + Integer.BYTES)];
+                for (int k = 0; k < result.length; k += 1) {
+                    result[k] = _index.getInt(offset + k * Integer.BYTES);
+                }
+                return result;
+            }
+        }
+        return new int[0];
+    }
+
+    /** Return the commit id and message of indexed entry I. */
+    private String[] entry(int i) {
+        _index.position(_index.getInt(HEADER + termCount() * TERM_SIZE
+                                      + i * Integer.BYTES));
+        String id = readString(_index);
+        String message = id == null ? null : readString(_index);
+        if (message == null) {
+            throw Utils.error("Damaged message index %s", _file);
+        }
+        return new String[] {id, message};
+    }
+
+    /** Index ENTRIES, which map commit ids to messages, together with
+     *  the entries of the current index file and journal, write the
+     *  index file and empty the journal. The journal is locked
+     *  throughout, so entries journaled or folded in by another command
+     *  meanwhile are kept. */
+    private void compact(LinkedHashMap<String, String> entries) {
+        _journal.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(_journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                if (_file.isFile()) {
+                    mapIndex();
+                    for (int i = 0; i < count(); i += 1) {
+                        String[] entry = entry(i);
+                        entries.putIfAbsent(entry[0], entry[1]);
+                    }
+                }
+                ByteBuffer journal = ByteBuffer.allocate(
+                    (int) channel.size());
+                while (journal.hasRemaining()
+                       && channel.read(journal, journal.position()) >= 0) {
+                    continue;
+                }
+                journal.flip();
+                ArrayList<String> ids = new ArrayList<>();
+                ArrayList<String> messages = new ArrayList<>();
+                readJournal(journal, ids, messages);
+                for (int i = 0; i < ids.size(); i += 1) {
+                    entries.putIfAbsent(ids.get(i), messages.get(i));
+                }
+                writeIndex(entries);
+                channel.truncate(0);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                              excp.getMessage());
+        }
+        mapIndex();
+        _ids.clear();
+        _messages.clear();
+        _built = true;
+    }
+
+    /** Map the index file. */
+    private void mapIndex() {
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            _index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read message index: %s",
+                              excp.getMessage());
+        }
+        if (_index.limit() < HEADER || _index.getInt(0) != MAGIC
+            || _index.getInt(Integer.BYTES) != VERSION) {
+            throw Utils.error("Unrecognized message index %s", _file);
+        }
+    }
+
+    /** Write the index file of ENTRIES, which map commit ids to
+     *  messages, replacing it atomically. */
+    private void writeIndex(LinkedHashMap<String, String> entries)
+            throws IOException {
+        HashMap<Long, int[]> postings =
+            postings(new ArrayList<>(entries.values()));
+        long[] terms = postings.keySet().stream().mapToLong(t -> t)
+            .sorted().toArray();
+        int[] offsets = new int[entries.size()];
+        int base = HEADER + terms.length * TERM_SIZE
+            + offsets.length * Integer.BYTES;
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream rec = new DataOutputStream(records);
+        int k = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            offsets[k++] = base + rec.size();
+            Utils.writeString(rec, entry.getKey());
+            Utils.writeString(rec, entry.getValue());
+        }
+        File temp = new File(_file.getPath() + ".tmp");
+        _file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.length);
+            out.writeInt(terms.length);
+            int offset = base + rec.size();
+            for (long term : terms) {
+                int length = postings.get(term).length;
+                out.writeLong(term);
+                out.writeInt(offset);
+                out.writeInt(length);
+                offset += length * Integer.BYTES;
+            }
+            for (int entry : offsets) {
+                out.writeInt(entry);
+            }
+            records.writeTo(out);
+            for (long term : terms) {
+                for (int i : postings.get(term)) {
+                    out.writeInt(i);
+                }
+            }
+        }
+        Files.move(temp.toPath(), _file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Return the sorted numbers of the entries of MESSAGES holding each
+     *  of their terms. */
+    private static HashMap<Long, int[]> postings(List<String> messages) {
+        HashMap<Long, int[]> postings = new HashMap<>();
+        HashMap<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < messages.size(); i += 1) {
+            for (long term : terms(messages.get(i))) {
+                int[] list = postings.get(term);
+                int count = counts.getOrDefault(term, 0);
+                if (list == null || count == list.length) {
+                    list = list == null ? new int[2]
+                        : Arrays.copyOf(list, 2 * list.length);
+                    postings.put(term, list);
+                }
+                list[count] = i;
+                counts.put(term, count + 1);
+            }
+        }
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(),
+                                         counts.get(entry.getKey())));
+        }
+        return postings;
+    }
+
+    /** Append the complete entries of the journal contents BUF to IDS
+     *  and MESSAGES. An entry cut short, as a crash can leave one, ends
+     *  the journal. */
+    private static void readJournal(ByteBuffer buf, List<String> ids,
+                                    List<String> messages) {
+        while (true) {
+            String id = readString(buf);
+            String message = id == null ? null : readString(buf);
+            if (message == null) {
+                return;
+            }
+            ids.add(id);
+            messages.add(message);
+        }
+    }
+
+    /** Return the string written by Utils.writeString at the position of
+     *  BUF, advancing past it, or null if BUF ends first. */
+    private static String readString(ByteBuffer buf) {
+        if (buf.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the index terms of MESSAGE. */
+    private static long[] terms(String message) {
+        String normal = normalize(message);
+        long[] trigrams = trigrams(normal);
+        if (normal.length() < 3) {
+            return trigrams;
+        }
+        long[] result = Arrays.copyOf(trigrams, trigrams.length + 1);
+        result[trigrams.length] = wholeTerm(normal);
+        return result;
+    }
+
+    /** Return the distinct trigrams of TEXT packed into longs. */
+    private static long[] trigrams(String text) {
+        long[] result = new long[Math.max(0, text.length() - 2)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = ((long) text.charAt(i) << 32)
+                | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return Arrays.stream(result).distinct().toArray();
+    }
+
+    /** Return the term for a whole normalized message NORMAL. Trigrams
+     *  never set the top bit, so the two kinds of term cannot clash. */
+    private static long wholeTerm(String normal) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < normal.length(); i += 1) {
+            h ^= normal.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h | Long.MIN_VALUE;
+    }
+
+    /** Return MESSAGE lower-cased with runs of whitespace made single
+     *  spaces. */
+    private static String normalize(String message) {
+        return message.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    /** Return runs of literal text outside groups and classes that
+     *  every match of the regular expression REGEX must contain, or none
+     *  if that is unclear. */
+    private static List<String> requiredLiterals(String regex) {
+        ArrayList<String> result = new ArrayList<>();
+        if (regex.contains("|") || regex.contains("(?")) {
+            return result;
+        }
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < regex.length(); i += 1) {
+            char c = regex.charAt(i);
+            char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+            boolean optional = next == '?' || next == '*' || next == '{';
+            if (c == '\\' && next != 0 && !Character.isLetterOrDigit(next)) {
+                c = next;
+                i += 1;
+                next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+                optional = next == '?' || next == '*' || next == '{';
+            } else if (META.indexOf(c) >= 0 || c == '\\') {
+                optional = true;
+                if (c == '\\') {
+                    i += 1;
+                } else if (c == '[' || c == '{') {
+                    char close = c == '[' ? ']' : '}';
+                    while (i < regex.length() && regex.charAt(i) != close) {
+                        i += 1;
+                    }
+                } else if (c == '(') {
+                    for (int depth = 1; depth > 0 && i + 1 < regex.length();) {
+                        i += 1;
+                        if (regex.charAt(i) == '\\') {
+                            i += 1;
+                        } else if (regex.charAt(i) == '(') {
+                            depth += 1;
+                        } else if (regex.charAt(i) == ')') {
+                            depth -= 1;
+                        }
+                    }
+                }
+            }
+            if (optional) {
+                result.add(run.toString());
+                run.setLength(0);
+            } else {
+                run.append(c);
+            }
+        }
+        result.add(run.toString());
+        result.removeIf(s -> s.length() < 3);
+        return result;
+    }
+
+    /** Return the values in both sorted arrays A and B. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n++] = a[i];
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Characters with a special meaning in a regular expression. */
+    private static final String META = ".^$*+?()[]{}";
+
+    /** Journaled entries allowed before they are folded into the index. */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    /** Identifies a message index file. */
+    private static final int MAGIC = 0x474c4d49;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 2;
+
+    /** Offsets of the entry and term counts in the index file. */
+    private static final int COUNT_OFFSET = 8, TERMS_OFFSET = 12;
+
+    /** Bytes before the term table. */
+    private static final int HEADER = 16;
+
+    /** Bytes of a term table row: the term, and the offset and length
+     *  of its postings. */
+    private static final int TERM_SIZE = Long.BYTES + 2 * Integer.BYTES;
+
+    /** The index file. */
+    private final File _file;
+
+    /** The journal of entries not yet indexed. */
+    private final File _journal;
+
+    /** True if the index file exists. */
+    private boolean _built;
+
+    /** The mapped index file, or null if there is none. */
+    private ByteBuffer _index;
+
+    /** Commit id of each journaled entry. */
+    private final ArrayList<String> _ids;
+
+    /** Message of each journaled entry. */
+    private final ArrayList<String> _messages;
+}
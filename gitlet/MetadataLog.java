@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/** An append-only log of the header of every commit: its id, timestamp
+ *  and message. Listing all commits reads this one file sequentially
+ *  instead of deserializing each commit with its files, and needs only
+ *  one record in memory at a time.
+ *
+ *  The file is MAGIC and VERSION followed by one record per commit.
+ *  Commits made since the last rebuild are appended in the order they
+ *  were made; a rebuild writes every commit in the order CommitScanner
+ *  finds them, which is by id, not by time.
+ *  @author Yusuf Quddus
+ */
+class MetadataLog {
+
+    /** Receives the records of the log one at a time. */
+    interface Visitor {
+        /**
+         * Handle the record of commit ID.
+         *
+         * @param id a commit id.
+         * @param timestamp its timestamp.
+         * @param message its message.
+         * @return false to stop reading
+         */
+        boolean visit(String id, String timestamp, String message);
+    }
+
+    /**
+     * A log stored in FILE, which need not exist.
+     *
+     * @param file the log file.
+     */
+    MetadataLog(File file) {
+        _file = file;
+    }
+
+    /**
+     * @return true if the log has been created; commits are only
+     *         appended to a log that exists
+     */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /**
+     * Add the header of COMMIT, whose id is ID, if the log exists.
+     *
+     * @param id a commit id.
+     * @param commit the commit.
+     */
+    void append(String id, Commit commit) {
+        if (!exists()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            writeRecord(out, id, commit.getTimestamp(), commit.getMessage());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write metadata log: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Create the log from every commit SCANNER reads, replacing any log
+     * already there.
+     *
+     * @param scanner reads the commits of the repository.
+     */
+    void rebuild(CommitScanner scanner) {
+        File temp = new File(_file.getPath() + ".tmp");
+        _file.getParentFile().mkdirs();
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                scanner.scan((id, commit) -> new String[] {
+                    id, commit.getTimestamp(), commit.getMessage()
+                }, record -> {
+                    try {
+                        writeRecord(out, record[0], record[1], record[2]);
+                        return true;
+                    } catch (IOException excp) {
+                        throw new UncheckedIOException(excp);
+                    }
+                });
+            }
+            Files.move(temp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UncheckedIOException excp) {
+            throw Utils.error("Cannot write metadata log: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Pass each record to VISITOR in the order they are stored, until
+     * it returns false.
+     *
+     * @param visitor receives the records.
+     */
+    void forEach(Visitor visitor) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(_file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unrecognized metadata log %s", _file);
+            }
+            while (true) {
+                String id, timestamp, message;
+                try {
+                    id = Utils.readString(in);
+                    timestamp = Utils.readString(in);
+                    message = Utils.readString(in);
+                } catch (EOFException excp) {
+                    return;
+                }
+                if (!visitor.visit(id, timestamp, message)) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read metadata log: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** Write the record of commit ID with TIMESTAMP and MESSAGE to OUT. */
+    private static void writeRecord(DataOutputStream out, String id,
+                                    String timestamp, String message)
+        throws IOException {
+        Utils.writeString(out, id);
+        Utils.writeString(out, timestamp);
+        Utils.writeString(out, message);
+    }
+
+    /** Identifies a metadata log. */
+    private static final int MAGIC = 0x474c4d44;
+
+    /** Version of the record layout. */
+    private static final int VERSION = 1;
+
+    /** Bytes read from the log at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The log file. */
+    private final File _file;
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/** Loads values ahead of a traversal that knows which keys come next,
+ *  such as the commits along a chain of parents in the commit-graph.
+ *  Up to a fixed number of loads run on background threads while the
+ *  caller works on the current value, so reading from slow storage
+ *  overlaps with processing. Loads wait in a bounded queue in the order
+ *  of the keys.
+ *  @param <T> type of the values loaded.
+ *  @author Yusuf Quddus
+ */
+class Prefetcher<T> implements AutoCloseable {
+
+    /**
+     * A prefetcher loading the values of KEYS, in order, with LOADER,
+     * keeping at most DEPTH loads queued.
+     *
+     * @param keys keys the traversal will ask for, in order.
+     * @param loader loads the value of a key; called on other threads.
+     * @param depth most loads queued ahead of the traversal.
+     */
+    Prefetcher(Iterator<String> keys, Function<String, T> loader, int depth) {
+        _keys = keys;
+        _loader = loader;
+        _depth = depth;
+        _queue = new ArrayDeque<>(depth);
+        _pool = Executors.newFixedThreadPool(depth, runnable -> {
+            Thread thread = new Thread(runnable, "prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fill();
+    }
+
+    /**
+     * Return the value of KEY. Queued loads of keys before KEY, which the
+     * traversal skipped, are dropped.
+     *
+     * @param key a key the traversal needs now.
+     * @return its value
+     */
+    T get(String key) {
+        while (!_queue.isEmpty()) {
+            Load<T> load = _queue.poll();
+            if (load._key.equals(key)) {
+                fill();
+                try {
+                    return load._value.get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    throw Utils.error("Cannot read %s: %s", key,
+                                      excp.getMessage());
+                }
+            }
+            load._value.cancel(false);
+        }
+        fill();
+        return _loader.apply(key);
+    }
+
+    @Override
+    public void close() {
+        _pool.shutdownNow();
+    }
+
+    /** Queue loads of the next keys until DEPTH are queued. */
+    private void fill() {
+        while (_queue.size() < _depth && _keys.hasNext()) {
+            String key = _keys.next();
+            _queue.add(new Load<>(key, _pool.submit(() -> _loader.apply(key))));
+        }
+    }
+
+    /** A queued load of the value of a key. */
+    private static class Load<T> {
+        /** A load of KEY whose result is VALUE. */
+        Load(String key, Future<T> value) {
+            _key = key;
+            _value = value;
+        }
+
+        /** The key. */
+        private final String _key;
+        /** Its value, once loaded. */
+        private final Future<T> _value;
+    }
+
+    /** Keys not yet queued. */
+    private final Iterator<String> _keys;
+
+    /** Loads a value. */
+    private final Function<String, T> _loader;
+
+    /** Most loads queued. */
+    private final int _depth;
+
+    /** Queued loads in key order. */
+    private final ArrayDeque<Load<T>> _queue;
+
+    /** Threads running the loads. */
+    private final ExecutorService _pool;
+}
@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Reachability bitmaps over commit-graph positions. For selected
+ *  commits, usually branch tips, a Bitmap of the positions of every
+ *  commit reachable from it is stored by repack. Since a commit's
+ *  history never changes, a stored bitmap stays valid as branches move
+ *  on; walks from newer commits stop as soon as they meet a commit with
+ *  a bitmap and use it for the rest of the history. Each repack keeps
+ *  only the bitmaps of the current tips and of the commits their new
+ *  bitmaps were built from.
+ *
+ *  The file is MAGIC, VERSION and the number of bitmaps, followed by
+ *  the commit hash and serialized Bitmap of each.
+ *  @author Yusuf Quddus
+ */
+class Reachability {
+
+    /**
+     * Load the bitmaps stored in FILE, if any, for commits of GRAPH.
+     *
+     * @param file the bitmap file, which need not exist.
+     * @param graph the commit-graph the bitmaps index.
+     */
+    Reachability(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+        _bitmaps = new HashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unrecognized bitmap file %s", file);
+            }
+            for (int i = in.readInt(); i > 0; i -= 1) {
+                int pos = graph.position(in.readUTF());
+                Bitmap bitmap = Bitmap.read(in);
+                if (pos != CommitGraph.NONE) {
+                    _bitmaps.put(pos, bitmap);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read bitmaps: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * @return number of stored bitmaps
+     */
+    int size() {
+        return _bitmaps.size();
+    }
+
+    /**
+     * Return the positions of all commits reachable from POS, POS
+     * included. Stored bitmaps met along the way are merged in whole.
+     *
+     * @param pos a position in the graph.
+     * @return bitmap of reachable positions
+     */
+    Bitmap reachable(int pos) {
+        return reachable(pos, new HashSet<>());
+    }
+
+    /** Return the positions of all commits reachable from POS, adding to
+     *  BASES the positions whose stored bitmaps were merged in. */
+    private Bitmap reachable(int pos, Set<Integer> bases) {
+        Bitmap stored = _bitmaps.get(pos);
+        if (stored != null) {
+            return stored;
+        }
+        Bitmap walked = new Bitmap();
+        Bitmap covered = new Bitmap();
+        boolean[] seen = new boolean[_graph.size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        seen[pos] = true;
+        work.push(pos);
+        while (!work.isEmpty()) {
+            int next = work.pop();
+            if (covered.contains(next)) {
+                continue;
+            }
+            stored = _bitmaps.get(next);
+            if (stored != null) {
+                covered = covered.or(stored);
+                bases.add(next);
+                continue;
+            }
+            walked.add(next);
+            for (int parent : new int[] {_graph.parent(next),
+                                         _graph.secondParent(next)}) {
+                if (parent != CommitGraph.NONE && !seen[parent]) {
+                    seen[parent] = true;
+                    work.push(parent);
+                }
+            }
+        }
+        return walked.or(covered);
+    }
+
+    /**
+     * Return whether ANCESTOR is reachable from DESCENDANT. A stored
+     * bitmap answers this with one lookup; otherwise the walk from
+     * DESCENDANT stops at stored bitmaps and at commits of lower
+     * generation than ANCESTOR.
+     *
+     * @param ancestor a position in the graph.
+     * @param descendant a position in the graph.
+     * @return true if ANCESTOR is DESCENDANT or one of its ancestors
+     */
+    boolean isAncestor(int ancestor, int descendant) {
+        int generation = _graph.generation(ancestor);
+        if (ancestor == descendant) {
+            return true;
+        } else if (generation >= _graph.generation(descendant)) {
+            return false;
+        }
+        boolean[] seen = new boolean[_graph.size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        seen[descendant] = true;
+        work.push(descendant);
+        while (!work.isEmpty()) {
+            int next = work.pop();
+            Bitmap stored = _bitmaps.get(next);
+            if (next == ancestor
+                || stored != null && stored.contains(ancestor)) {
+                return true;
+            } else if (stored != null) {
+                continue;
+            }
+            for (int parent : new int[] {_graph.parent(next),
+                                         _graph.secondParent(next)}) {
+                if (parent != CommitGraph.NONE && !seen[parent]
+                    && _graph.generation(parent) >= generation) {
+                    seen[parent] = true;
+                    work.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute bitmaps for the commits at positions TIPS and rewrite the
+     * bitmap file with them. Older tips are done first so newer ones can
+     * build on them. Of the bitmaps stored before, only those of TIPS
+     * and those a new tip's bitmap was built from are kept, so bitmaps
+     * of deleted branches and of commits branches have long moved past
+     * are dropped.
+     *
+     * @param tips positions in the graph.
+     */
+    void write(int[] tips) {
+        int[] sorted = tips.clone();
+        Arrays.sort(sorted);
+        HashSet<Integer> keep = new HashSet<>();
+        for (int tip : sorted) {
+            if (!_bitmaps.containsKey(tip)) {
+                _bitmaps.put(tip, reachable(tip, keep));
+            }
+            keep.add(tip);
+        }
+        _bitmaps.keySet().retainAll(keep);
+        File temp = new File(_file.getPath() + ".tmp");
+        try {
+            _file.getParentFile().mkdirs();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_bitmaps.size());
+                for (int pos : _bitmaps.keySet()) {
+                    out.writeUTF(_graph.hash(pos));
+                    _bitmaps.get(pos).write(out);
+                }
+            }
+            Files.move(temp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write bitmaps: %s", excp.getMessage());
+        }
+    }
+
+    /** Identifies a bitmap file. */
+    private static final int MAGIC = 0x474c424d;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** The bitmap file. */
+    private final File _file;
+
+    /** The commit-graph whose positions the bitmaps hold. */
+    private final CommitGraph _graph;
+
+    /** Reachability bitmap of each commit that has one. */
+    private final HashMap<Integer, Bitmap> _bitmaps;
+}
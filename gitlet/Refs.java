@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The branches of a repository, kept in two places: a packed-refs file
+ *  holding every branch sorted by name, and loose files, one per branch
+ *  in the branch directory, that override it. Updating a branch writes
+ *  its loose file; pack folds the loose files back into the packed file.
+ *  Looking up a branch is then one file read and a binary search, and
+ *  listing them all is one read of the packed file.
+ *
+ *  The packed file is MAGIC and VERSION, the number of branches, the
+ *  offset of each branch's record in name order, then the records: the
+ *  length and UTF-8 bytes of the name, then of the commit id. It is
+ *  only ever replaced whole, by moving a new file over it.
+ *  @author Yusuf Quddus
+ */
+class Refs {
+
+    /**
+     * The branches with loose files in DIR and packed into PACKED.
+     *
+     * @param dir directory of loose branch files.
+     * @param packed the packed-refs file, which need not exist.
+     */
+    Refs(File dir, File packed) {
+        _dir = dir;
+        _packed = packed;
+    }
+
+    /**
+     * @param name a branch name.
+     * @return the commit id branch NAME points to, or null if there is
+     *         no such branch
+     */
+    String get(String name) {
+        File loose = Utils.join(_dir, name);
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose);
+        }
+        ByteBuffer buf = packed();
+        int lo = 0, hi = count(buf) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            buf.position(buf.getInt(HEADER + mid * Integer.BYTES));
+            int cmp = readString(buf).compareTo(name);
+            if (cmp == 0) {
+                return readString(buf);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name a branch name.
+     * @return true if branch NAME exists
+     */
+    boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return every branch mapped to its commit id, in name order
+     */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> result = readPacked();
+        String[] loose = looseNames();
+        for (String name : loose) {
+            result.put(name, Utils.readContentsAsString(
+                    Utils.join(_dir, name)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of branches with loose files
+     */
+    int looseCount() {
+        return looseNames().length;
+    }
+
+    /**
+     * Delete branch NAME, both its loose file and its packed entry.
+     *
+     * @param name a branch name.
+     */
+    void remove(String name) {
+        Utils.join(_dir, name).delete();
+        if (readPacked().containsKey(name)) {
+            File lock = lockPacked();
+            TreeMap<String, String> packed = readPacked();
+            packed.remove(name);
+            writePacked(lock, packed);
+        }
+    }
+
+    /**
+     * Move every loose branch into the packed file. A loose file is only
+     * deleted after the new packed file is in place, and only under the
+     * branch's own lock and if it still holds the commit packed, so an
+     * update made meanwhile is kept.
+     */
+    void pack() {
+        File lock = lockPacked();
+        TreeMap<String, String> refs;
+        try {
+            refs = all();
+        } catch (GitletException excp) {
+            lock.delete();
+            throw excp;
+        }
+        writePacked(lock, refs);
+        for (String name : looseNames()) {
+            File loose = Utils.join(_dir, name);
+            File looseLock = new File(loose.getPath() + LOCK_SUFFIX);
+            try {
+                if (!looseLock.createNewFile()) {
+                    continue;
+                }
+            } catch (IOException excp) {
+                continue;
+            }
+            if (Utils.readContentsAsString(loose).equals(refs.get(name))) {
+                loose.delete();
+            }
+            looseLock.delete();
+        }
+    }
+
+    /** Return the names of the loose branch files. */
+    private String[] looseNames() {
+        String[] names = _dir.list((dir, name)
+                -> !name.endsWith(LOCK_SUFFIX));
+        return names == null ? new String[0] : names;
+    }
+
+    /** Return the packed file, read on first use; empty if there is
+     *  none. */
+    private ByteBuffer packed() {
+        if (_contents == null) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(0);
+            if (_packed.isFile()) {
+                buf = ByteBuffer.wrap(Utils.readContents(_packed));
+                if (buf.getInt(0) != MAGIC || buf.getInt(Integer.BYTES)
+                        != VERSION) {
+                    throw Utils.error("Unreadable packed refs file.");
+                }
+            }
+            _contents = buf;
+        }
+        return _contents;
+    }
+
+    /** Return the number of branches in the packed file BUF. */
+    private static int count(ByteBuffer buf) {
+        return buf.getInt(2 * Integer.BYTES);
+    }
+
+    /** Return every packed branch mapped to its commit id. */
+    private TreeMap<String, String> readPacked() {
+        ByteBuffer buf = packed();
+        TreeMap<String, String> result = new TreeMap<>();
+        int n = count(buf);
+        buf.position(HEADER + n * Integer.BYTES);
+        for (int k = 0; k < n; k += 1) {
+            result.put(readString(buf), readString(buf));
+        }
+        return result;
+    }
+
+    /** Return the string at the position of BUF, advancing past it. */
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xffff;
+        String s = new String(buf.array(), buf.position(), length,
+                              StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    /** Take the lock on the packed file and return the lock file, which
+     *  the new contents are written to. The packed file is read again
+     *  after this, as another command may have replaced it. */
+    private File lockPacked() {
+        File lock = new File(_packed.getPath() + LOCK_SUFFIX);
+        _contents = null;
+        try {
+            if (!lock.createNewFile()) {
+                throw Utils.error("Unable to lock %s; another gitlet command"
+                                  + " may be running.", _packed.getName());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Unable to lock %s: %s", _packed.getName(),
+                              excp.getMessage());
+        }
+        return lock;
+    }
+
+    /** Write REFS to LOCK, the packed file's lock, and move it over the
+     *  packed file. */
+    private void writePacked(File lock, TreeMap<String, String> refs) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int[] offsets = new int[refs.size()];
+        int base = HEADER + refs.size() * Integer.BYTES;
+        int k = 0;
+        try {
+            DataOutputStream rec = new DataOutputStream(records);
+            for (Map.Entry<String, String> ref : refs.entrySet()) {
+                offsets[k++] = base + rec.size();
+                writeString(rec, ref.getKey());
+                writeString(rec, ref.getValue());
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(lock)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(offsets.length);
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                records.writeTo(out);
+            }
+            Files.move(lock.toPath(), _packed.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            lock.delete();
+            throw Utils.error("Unable to update %s: %s", _packed.getName(),
+                              excp.getMessage());
+        }
+        _contents = null;
+    }
+
+    /** Write S to OUT as its length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Suffix of the lock file guarding an update of a ref file. */
+    static final String LOCK_SUFFIX = ".lock";
+
+    /** Identifies a packed-refs file. */
+    private static final int MAGIC = 0x474c5246;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the record offsets. */
+    private static final int HEADER = 3 * Integer.BYTES;
+
+    /** Directory of loose branch files. */
+    private final File _dir;
+
+    /** The packed-refs file. */
+    private final File _packed;
+
+    /** Contents of the packed file, or null until read. */
+    private ByteBuffer _contents;
+}
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Pairs files deleted from a snapshot with files added to it that are
+ *  likely the same file under a new name. Files with identical contents
+ *  are paired first. The remaining files are summarised by MinHash
+ *  sketches of their distinct lines, and only pairs that collide in at
+ *  least one locality-sensitive hash band are scored, so the work grows
+ *  with the number of files rather than the number of pairs.
+ *  @author Yusuf Quddus
+ */
+class RenameDetector {
+
+    /** Minimum estimated similarity for two files to count as a rename. */
+    static final double DEFAULT_THRESHOLD = 0.5;
+
+    /**
+     * Detect renames between REMOVED and ADDED files using the default
+     * similarity threshold.
+     *
+     * @param removed files that disappeared, keyed by name.
+     * @param added files that appeared, keyed by name.
+     * @return map from old name to new name of each rename found.
+     */
+    static TreeMap<String, String> detect(Map<String, Blob> removed,
+                                          Map<String, Blob> added) {
+        return detect(removed, added, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Detect renames between REMOVED and ADDED files. Each file takes
+     * part in at most one rename.
+     *
+     * @param removed files that disappeared, keyed by name.
+     * @param added files that appeared, keyed by name.
+     * @param threshold minimum estimated similarity between 0 and 1.
+     * @return map from old name to new name of each rename found.
+     */
+    static TreeMap<String, String> detect(Map<String, Blob> removed,
+                                          Map<String, Blob> added,
+                                          double threshold) {
+        TreeMap<String, String> renames = new TreeMap<>();
+        if (removed.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        HashMap<String, ArrayDeque<String>> byContents = new HashMap<>();
+        for (String name : new TreeMap<>(removed).keySet()) {
+            byContents.computeIfAbsent(removed.get(name).getFileContents(),
+                k -> new ArrayDeque<>()).add(name);
+        }
+        ArrayList<String> unpairedAdded = new ArrayList<>();
+        for (String name : new TreeMap<>(added).keySet()) {
+            ArrayDeque<String> same =
+                byContents.get(added.get(name).getFileContents());
+            if (same != null && !same.isEmpty()) {
+                renames.put(same.poll(), name);
+            } else {
+                unpairedAdded.add(name);
+            }
+        }
+        ArrayList<String> unpairedRemoved = new ArrayList<>();
+        for (String name : new TreeMap<>(removed).keySet()) {
+            if (!renames.containsKey(name)) {
+                unpairedRemoved.add(name);
+            }
+        }
+        if (unpairedRemoved.isEmpty() || unpairedAdded.isEmpty()) {
+            return renames;
+        }
+
+        long[][] oldSketches = new long[unpairedRemoved.size()][];
+        for (int i = 0; i < oldSketches.length; i += 1) {
+            oldSketches[i] = sketch(removed.get(unpairedRemoved.get(i)));
+        }
+        long[][] newSketches = new long[unpairedAdded.size()][];
+        for (int j = 0; j < newSketches.length; j += 1) {
+            newSketches[j] = sketch(added.get(unpairedAdded.get(j)));
+        }
+
+        List<Candidate> candidates =
+            candidates(oldSketches, newSketches, threshold);
+        Collections.sort(candidates);
+        boolean[] oldUsed = new boolean[oldSketches.length];
+        boolean[] newUsed = new boolean[newSketches.length];
+        for (Candidate c : candidates) {
+            if (!oldUsed[c._old] && !newUsed[c._new]) {
+                oldUsed[c._old] = newUsed[c._new] = true;
+                renames.put(unpairedRemoved.get(c._old),
+                            unpairedAdded.get(c._new));
+            }
+        }
+        return renames;
+    }
+
+    /** Return the scored pairs among OLDSKETCHES and NEWSKETCHES that
+     *  share a band bucket and reach THRESHOLD. */
+    private static List<Candidate> candidates(long[][] oldSketches,
+                                              long[][] newSketches,
+                                              double threshold) {
+        HashMap<Long, ArrayList<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < oldSketches.length; i += 1) {
+            if (oldSketches[i] == null) {
+                continue;
+            }
+            for (int b = 0; b < BANDS; b += 1) {
+                buckets.computeIfAbsent(bandKey(oldSketches[i], b),
+                    k -> new ArrayList<>()).add(i);
+            }
+        }
+        ArrayList<Candidate> result = new ArrayList<>();
+        HashSet<Long> scored = new HashSet<>();
+        for (int j = 0; j < newSketches.length; j += 1) {
+            if (newSketches[j] == null) {
+                continue;
+            }
+            for (int b = 0; b < BANDS; b += 1) {
+                ArrayList<Integer> bucket =
+                    buckets.get(bandKey(newSketches[j], b));
+                if (bucket == null) {
+                    continue;
+                }
+                int limit = Math.min(bucket.size(), MAX_BUCKET_PAIRS);
+                for (int k = 0; k < limit; k += 1) {
+                    int i = bucket.get(k);
+                    if (!scored.add(((long) i << 32) | j)) {
+                        continue;
+                    }
+                    double score = similarity(oldSketches[i], newSketches[j]);
+                    if (score >= threshold) {
+                        result.add(new Candidate(i, j, score));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the MinHash sketch of the distinct lines of BLOB, or null if
+     *  it has no lines. */
+    private static long[] sketch(Blob blob) {
+        byte[] bytes = blob.getFileContents().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            return null;
+        }
+        long[] sketch = new long[NUM_HASHES];
+        Arrays.fill(sketch, Long.MAX_VALUE);
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i += 1) {
+            if (i == bytes.length || bytes[i] == '\n') {
+                if (i > start || i < bytes.length) {
+                    long shingle = fnv(bytes, start, i);
+                    for (int h = 0; h < NUM_HASHES; h += 1) {
+                        long v = mix(shingle ^ SEEDS[h]);
+                        if (v < sketch[h]) {
+                            sketch[h] = v;
+                        }
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return sketch;
+    }
+
+    /** Return the fraction of positions on which sketches A and B agree,
+     *  an estimate of the Jaccard similarity of their line sets. */
+    private static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int h = 0; h < NUM_HASHES; h += 1) {
+            if (a[h] == b[h]) {
+                same += 1;
+            }
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    /** Return the bucket key of band BAND of SKETCH. */
+    private static long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r += 1) {
+            key = mix(key * 31 + sketch[r]);
+        }
+        return key;
+    }
+
+    /** Return the 64-bit FNV-1a hash of BYTES[START .. END - 1]. */
+    private static long fnv(byte[] bytes, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i += 1) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Return X scrambled by the SplitMix64 finalizer. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** A scored pairing of a removed file and an added file. Candidates
+     *  sort best first, ties broken by position for a stable result. */
+    private static class Candidate implements Comparable<Candidate> {
+        /** A candidate pairing removed file OLD with added file NEW. */
+        Candidate(int old, int nu, double score) {
+            _old = old;
+            _new = nu;
+            _score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int cmp = Double.compare(other._score, _score);
+            if (cmp == 0) {
+                cmp = Integer.compare(_old, other._old);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(_new, other._new);
+            }
+            return cmp;
+        }
+
+        /** Positions of the removed and added file. */
+        private final int _old, _new;
+        /** Estimated similarity. */
+        private final double _score;
+    }
+
+    /** Number of hash functions in a sketch. */
+    private static final int NUM_HASHES = 64;
+
+    /** Rows per locality-sensitive hash band. */
+    private static final int ROWS = 4;
+
+    /** Number of bands; with ROWS this puts the collision threshold near
+     *  a similarity of one half. */
+    private static final int BANDS = NUM_HASHES / ROWS;
+
+    /** Most removed files scored from one bucket for one added file, which
+     *  bounds the work on files made of a few very common lines. */
+    private static final int MAX_BUCKET_PAIRS = 64;
+
+    /** Per-function seeds for the sketch hashes. */
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        for (int h = 0; h < NUM_HASHES; h += 1) {
+            SEEDS[h] = mix(0x9e3779b97f4a7c15L * (h + 1));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The sparse-checkout cone: the set of paths of a commit that are
+ *  materialized in the working directory. The cone is described by glob
+ *  patterns, one per line, in .gitlet/sparse-checkout. A pattern ending
+ *  in '/' names a directory and everything under it. With no pattern
+ *  file every path is in the cone.
+ *  @author Yusuf Quddus
+ */
+class SparseCheckout {
+
+    /**
+     * Load the cone described by the pattern file FILE.
+     *
+     * @param file file of patterns, which need not exist.
+     */
+    SparseCheckout(File file) {
+        _file = file;
+        _patterns = new ArrayList<>();
+        _matchers = new ArrayList<>();
+        _enabled = file.isFile();
+        if (_enabled) {
+            for (String line
+                    : Utils.readContentsAsString(file).split("\n")) {
+                if (!line.isBlank()) {
+                    addPattern(line.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if only part of each commit is checked out
+     */
+    boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * @return patterns describing the cone, in the order given
+     */
+    List<String> getPatterns() {
+        return _patterns;
+    }
+
+    /**
+     * @param fileName path of a file relative to the working directory.
+     * @return true if FILENAME is in the cone
+     */
+    boolean contains(String fileName) {
+        if (!isEnabled()) {
+            return true;
+        }
+        for (PathMatcher matcher : _matchers) {
+            if (matcher.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace the cone with PATTERNS and persist them.
+     *
+     * @param patterns glob patterns describing the new cone.
+     */
+    void set(String... patterns) {
+        _patterns.clear();
+        _matchers.clear();
+        for (String pattern : patterns) {
+            addPattern(pattern);
+        }
+        _enabled = true;
+        Utils.writeContents(_file, String.join("\n", _patterns) + "\n");
+    }
+
+    /** Remove the pattern file, putting every path back in the cone. */
+    void disable() {
+        _file.delete();
+        _enabled = false;
+        _patterns.clear();
+        _matchers.clear();
+    }
+
+    /** Add PATTERN to the cone. */
+    private void addPattern(String pattern) {
+        _patterns.add(pattern);
+        String glob = pattern.endsWith("/") ? pattern + "**" : pattern;
+        _matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+    }
+
+    /** File holding the patterns. */
+    private final File _file;
+
+    /** True if a pattern file limits the cone. */
+    private boolean _enabled;
+
+    /** Patterns describing the cone. */
+    private final ArrayList<String> _patterns;
+
+    /** Matchers compiled from _patterns. */
+    private final ArrayList<PathMatcher> _matchers;
+}
@@ -4,6 +4,17 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -21,6 +32,314 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Empty sequences have nothing in common, and the edit adds or
+     *  removes everything. */
+    @Test
+    public void diffEmptyTest() {
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            Diff d = diff("", "", algorithm);
+            assertEquals(0, d.lls());
+            assertArrayEquals(new int[0], d.commonSubsequence());
+            assertArrayEquals(new int[0], d.diffs());
+            d = diff("", "ab", algorithm);
+            assertEquals(0, d.lls());
+            assertArrayEquals(new int[] {0, 0, 0, 2}, d.diffs());
+            d = diff("ab", "", algorithm);
+            assertEquals(0, d.lls());
+            assertArrayEquals(new int[] {0, 2, 0, 0}, d.diffs());
+        }
+    }
+
+    /** Identical sequences are one common run and need no edits. */
+    @Test
+    public void diffIdenticalTest() {
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            Diff d = diff("abcab", "abcab", algorithm);
+            assertEquals(5, d.lls());
+            assertArrayEquals(new int[] {0, 0, 5}, d.commonSubsequence());
+            assertArrayEquals(new int[0], d.diffs());
+            assertTrue(d.sequencesEqual());
+        }
+    }
+
+    /** Sequences with no line in common are replaced whole. */
+    @Test
+    public void diffDisjointTest() {
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            Diff d = diff("abc", "xy", algorithm);
+            assertEquals(0, d.lls());
+            assertArrayEquals(new int[0], d.commonSubsequence());
+            assertArrayEquals(new int[] {0, 3, 0, 2}, d.diffs());
+        }
+    }
+
+    /** Lengths differing by an odd and by an even number of lines, which
+     *  the middle snake search finds on forward and on backward passes
+     *  respectively. */
+    @Test
+    public void diffDeltaTest() {
+        String[][] cases = {
+            {"abcabba", "cbabac", "4"},
+            {"abcdef", "bdfg", "3"},
+            {"a", "ba", "1"},
+            {"xaxbx", "ab", "2"},
+        };
+        for (String[] c : cases) {
+            Diff d = diff(c[0], c[1], Diff.Algorithm.MYERS);
+            assertEquals(Integer.parseInt(c[2]), d.lls());
+            checkDiff(d);
+            d = diff(c[0], c[1], Diff.Algorithm.HISTOGRAM);
+            assertTrue(d.lls() <= Integer.parseInt(c[2]));
+            checkDiff(d);
+        }
+    }
+
+    /** Repeated lines: Myers still finds a longest common subsequence,
+     *  and the histogram diff anchors on the line that occurs once, b,
+     *  so the "}" after it is matched with the "}" after b. */
+    @Test
+    public void diffRepeatedLinesTest() {
+        Diff d = diff("{a}{b}", "{b}", Diff.Algorithm.MYERS);
+        assertEquals(3, d.lls());
+        checkDiff(d);
+        d = diff("{a}{b}", "{b}", Diff.Algorithm.HISTOGRAM);
+        assertEquals(3, d.lls());
+        assertArrayEquals(new int[] {0, 0, 1, 4, 1, 2},
+                          d.commonSubsequence());
+        assertArrayEquals(new int[] {1, 3, 1, 0}, d.diffs());
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            d = diff("aaaa", "aa", algorithm);
+            assertEquals(2, d.lls());
+            checkDiff(d);
+            d = diff("}}a}b}", "}a}}b}}", algorithm);
+            assertTrue(d.lls() <= lcs(d.sequence1(), d.sequence2()));
+            checkDiff(d);
+        }
+        d = diff("}}a}b}", "}a}}b}}", Diff.Algorithm.MYERS);
+        assertEquals(5, d.lls());
+    }
+
+    /** Random sequences over a small alphabet, so lines repeat often:
+     *  Myers agrees with the quadratic dynamic program, on whole
+     *  sequences and on prefixes, and both algorithms give valid edits. */
+    @Test
+    public void diffRandomTest() {
+        Random random = new Random(42);
+        for (int n = 0; n < 300; n += 1) {
+            String s1 = randomText(random, random.nextInt(30));
+            String s2 = randomText(random, random.nextInt(30));
+            Diff d = diff(s1, s2, Diff.Algorithm.MYERS);
+            List<String> a = d.sequence1(), b = d.sequence2();
+            assertEquals(lcs(a, b), d.lls());
+            checkDiff(d);
+            int k1 = random.nextInt(a.size() + 1);
+            int k2 = random.nextInt(b.size() + 1);
+            assertEquals(lcs(a.subList(0, k1), b.subList(0, k2)),
+                         d.lls(k1, k2));
+            d = diff(s1, s2, Diff.Algorithm.HISTOGRAM);
+            assertTrue(d.lls() <= lcs(a, b));
+            checkDiff(d);
+        }
+    }
+
+    /** An array chunk holds up to 4096 values and becomes a bitset past
+     *  that, without losing or inventing values. */
+    @Test
+    public void bitmapArrayLimitTest() {
+        Bitmap bitmap = new Bitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int v = 0; v < 2 * 4096; v += 2) {
+            bitmap.add(v);
+            expected.add(v);
+        }
+        assertEquals(4096, bitmap.cardinality());
+        assertArrayEquals(toArray(expected), bitmap.toArray());
+        bitmap.add(8191);
+        bitmap.add(8191);
+        expected.add(8191);
+        assertEquals(4097, bitmap.cardinality());
+        assertArrayEquals(toArray(expected), bitmap.toArray());
+        for (int v = 0; v < 2 * 4096 + 2; v += 1) {
+            assertEquals(expected.contains(v), bitmap.contains(v));
+        }
+    }
+
+    /** Values spread over several chunks, dense and sparse, including
+     *  the last chunk of non-negative ints. */
+    @Test
+    public void bitmapChunksTest() {
+        Random random = new Random(7);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Bitmap bitmap = randomBitmap(random, new int[] {0, 1, 5, 32767},
+                                     expected);
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(toArray(expected), bitmap.toArray());
+        for (int v : expected) {
+            assertTrue(bitmap.contains(v));
+            assertEquals(expected.contains(v + 1), bitmap.contains(v + 1));
+        }
+        assertEquals(expected.contains(Integer.MAX_VALUE),
+                     bitmap.contains(Integer.MAX_VALUE));
+        assertFalse(bitmap.contains(3 << 16));
+    }
+
+    /** or, and and andNot match the same operations on sets, across
+     *  chunks only one side has, chunks switching between arrays and
+     *  bitsets, and chunks left empty. */
+    @Test
+    public void bitmapSetOperationsTest() {
+        Random random = new Random(11);
+        for (int n = 0; n < 20; n += 1) {
+            TreeSet<Integer> x = new TreeSet<>(), y = new TreeSet<>();
+            Bitmap a = randomBitmap(random, new int[] {0, 1, 2, 9}, x);
+            Bitmap b = randomBitmap(random, new int[] {1, 2, 3, 9}, y);
+            TreeSet<Integer> union = new TreeSet<>(x);
+            union.addAll(y);
+            TreeSet<Integer> both = new TreeSet<>(x);
+            both.retainAll(y);
+            TreeSet<Integer> minus = new TreeSet<>(x);
+            minus.removeAll(y);
+            assertArrayEquals(toArray(union), a.or(b).toArray());
+            assertArrayEquals(toArray(both), a.and(b).toArray());
+            assertArrayEquals(toArray(minus), a.andNot(b).toArray());
+            assertArrayEquals(new int[0], a.andNot(a).toArray());
+            assertArrayEquals(toArray(x), a.toArray());
+        }
+        Bitmap dense = new Bitmap(), most = new Bitmap();
+        for (int v = 0; v < 6000; v += 1) {
+            dense.add(v);
+            if (v >= 10) {
+                most.add(v);
+            }
+        }
+        Bitmap rest = dense.andNot(most);
+        assertEquals(10, rest.cardinality());
+        assertTrue(rest.contains(9));
+        assertFalse(rest.contains(10));
+        assertEquals(6000, rest.or(most).cardinality());
+    }
+
+    /** A bitmap read back after write holds the same values. */
+    @Test
+    public void bitmapWriteReadTest() throws IOException {
+        Random random = new Random(3);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Bitmap bitmap = randomBitmap(random, new int[] {0, 4, 70, 32767},
+                                     expected);
+        for (Bitmap original : new Bitmap[] {bitmap, new Bitmap()}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            original.write(new DataOutputStream(bytes));
+            Bitmap copy = Bitmap.read(new DataInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray())));
+            assertArrayEquals(original.toArray(), copy.toArray());
+            assertEquals(original.cardinality(), copy.cardinality());
+        }
+    }
+
+    /** Return a Diff of S1 and S2, one line per character, found with
+     *  ALGORITHM. */
+    private static Diff diff(String s1, String s2,
+                             Diff.Algorithm algorithm) {
+        Diff d = new Diff();
+        d.setAlgorithm(algorithm);
+        d.setSequences(lines(s1), lines(s2));
+        return d;
+    }
+
+    /** Return the characters of S as one-character lines. */
+    private static List<String> lines(String s) {
+        ArrayList<String> result = new ArrayList<>();
+        for (char c : s.toCharArray()) {
+            result.add(String.valueOf(c));
+        }
+        return result;
+    }
 
+    /** Return N characters drawn from a three-letter alphabet. */
+    private static String randomText(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append((char) ('a' + random.nextInt(3)));
+        }
+        return result.toString();
+    }
+
+    /** Return the length of the longest common subsequence of A and B by
+     *  the quadratic dynamic program. */
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i -= 1) {
+            for (int j = b.size() - 1; j >= 0; j -= 1) {
+                table[i][j] = a.get(i).equals(b.get(j))
+                    ? table[i + 1][j + 1] + 1
+                    : Math.max(table[i + 1][j], table[i][j + 1]);
+            }
+        }
+        return table[0][0];
+    }
+
+    /** Check that the common runs of D are increasing, disjoint, made of
+     *  equal lines and as long as lls, and that applying its edits to the
+     *  first sequence gives the second. */
+    private static void checkDiff(Diff d) {
+        List<String> a = d.sequence1(), b = d.sequence2();
+        int[] common = d.commonSubsequence();
+        assertEquals(0, common.length % 3);
+        int end1 = 0, end2 = 0, total = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            assertTrue(common[k] >= end1 && common[k + 1] >= end2);
+            assertTrue(common[k + 2] > 0);
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                assertEquals(a.get(common[k] + i), b.get(common[k + 1] + i));
+            }
+            end1 = common[k] + common[k + 2];
+            end2 = common[k + 1] + common[k + 2];
+            total += common[k + 2];
+        }
+        assertTrue(end1 <= a.size() && end2 <= b.size());
+        assertEquals(total, d.lls());
+        int[] diffs = d.diffs();
+        assertEquals(0, diffs.length % 4);
+        ArrayList<String> edited = new ArrayList<>();
+        int next = 0;
+        for (int k = 0; k < diffs.length; k += 4) {
+            assertTrue(diffs[k] >= next);
+            assertTrue(diffs[k + 1] > 0 || diffs[k + 3] > 0);
+            edited.addAll(a.subList(next, diffs[k]));
+            edited.addAll(b.subList(diffs[k + 2],
+                                    diffs[k + 2] + diffs[k + 3]));
+            next = diffs[k] + diffs[k + 1];
+        }
+        edited.addAll(a.subList(next, a.size()));
+        assertEquals(b, edited);
+    }
+
+    /** Return a bitmap with values in the chunks with high bits KEYS,
+     *  each dense or sparse at random and added in random order, adding
+     *  them to EXPECTED as well. */
+    private static Bitmap randomBitmap(Random random, int[] keys,
+                                       TreeSet<Integer> expected) {
+        ArrayList<Integer> values = new ArrayList<>();
+        for (int key : keys) {
+            int count = random.nextBoolean() ? 10 + random.nextInt(100)
+                : 4000 + random.nextInt(3000);
+            for (int i = 0; i < count; i += 1) {
+                values.add((key << 16) | random.nextInt(1 << 16));
+            }
+        }
+        Collections.shuffle(values, random);
+        Bitmap result = new Bitmap();
+        for (int v : values) {
+            result.add(v);
+            expected.add(v);
+        }
+        return result;
+    }
+
+    /** Return the values of SET in increasing order. */
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(v -> v).toArray();
+    }
+
+}
 
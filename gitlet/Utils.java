@@ -4,6 +4,8 @@ package gitlet;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -218,6 +220,22 @@ class Utils {
         }
     }
 
+    /** Write S to OUT as its length followed by its UTF-8 bytes. Unlike
+     *  DataOutput.writeUTF, S may be of any length. */
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString, read from IN. */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
 
 
     /* MESSAGES AND ERROR REPORTING */